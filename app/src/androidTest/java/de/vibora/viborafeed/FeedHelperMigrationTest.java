@@ -0,0 +1,215 @@
+package de.vibora.viborafeed;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Legt eine Datenbank im Schema der Version 3 an, lässt {@link FeedHelper} sie auf die
+ * aktuelle Version bringen und prüft die Daten und die Query Plans danach.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FeedHelperMigrationTest {
+    private static final String DB_NAME = "migration-test.db";
+
+    private static final String V3_SCHEMA = "CREATE TABLE feeds (" +
+            "_id INTEGER PRIMARY KEY, feed_title TEXT, feed_date DATETIME, feed_link TEXT, " +
+            "feed_body TEXT, feed_image BLOB, feed_source INTEGER, feed_deleted INTEGER, " +
+            "feed_isnew INTEGER )";
+
+    private static final byte[] IMAGE = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    private Context _ctx;
+    private FeedHelper _helper;
+
+    /**
+     * Bilder, die schon vor dem Test im {@link ImageStore} der App waren
+     */
+    private final HashSet<String> _keptImages = new HashSet<>();
+
+    @Before
+    public void createV3() {
+        _ctx = InstrumentationRegistry.getTargetContext();
+        _ctx.deleteDatabase(DB_NAME);
+        String imageKey = ImageStore.keyOf(IMAGE);
+        if (ImageStore.ME(_ctx).has(imageKey)) _keptImages.add(imageKey);
+        File file = _ctx.getDatabasePath(DB_NAME);
+        file.getParentFile().mkdirs();
+
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.execSQL(V3_SCHEMA);
+            insert(db, 1, "<b>Erster</b> Titel", "http://example.com/1", "<p>Hallo Welt</p>",
+                    null, 1, FeedContract.Flag.VISIBLE, FeedContract.Flag.FAVORITE);
+            insert(db, 2, "Zweiter", "http://example.com/2", "Mit Bild",
+                    IMAGE, 1, FeedContract.Flag.VISIBLE, FeedContract.Flag.NEW);
+            insert(db, 3, "Gelöscht", "http://example.com/3", "weg",
+                    null, 2, FeedContract.Flag.DELETED, FeedContract.Flag.READED);
+            // same link as row 2
+            insert(db, 4, "Nochmal", "http://example.com/2", "doppelt",
+                    null, 2, FeedContract.Flag.VISIBLE, FeedContract.Flag.FAVORITE);
+            db.setVersion(3);
+        } finally {
+            db.close();
+        }
+        _helper = new FeedHelper(_ctx, DB_NAME);
+    }
+
+    /**
+     * moveImages schreibt in den echten {@link ImageStore}: die Dateien der migrierten
+     * Zeilen werden wieder gelöscht, damit nichts in der installierten App liegen bleibt.
+     */
+    @After
+    public void dropDb() {
+        Cursor c = _helper.getReadableDatabase().query(
+                true, FeedContract.Feeds.TABLE_NAME,
+                new String[]{FeedContract.Feeds.COLUMN_ImageKey},
+                FeedContract.Feeds.COLUMN_ImageKey + " IS NOT NULL",
+                null, null, null, null, null
+        );
+        try {
+            ImageStore store = ImageStore.ME(_ctx);
+            while (c.moveToNext()) {
+                String key = c.getString(0);
+                if (!_keptImages.contains(key)) store.file(key).delete();
+            }
+        } finally {
+            c.close();
+        }
+        _helper.close();
+        _ctx.deleteDatabase(DB_NAME);
+    }
+
+    private static void insert(SQLiteDatabase db, long id, String title, String link, String body,
+                               byte[] image, int source, int deleted, int flag) {
+        ContentValues values = new ContentValues();
+        values.put("_id", id);
+        values.put("feed_title", title);
+        values.put("feed_date", "2016-10-0" + id + " 12:00:00");
+        values.put("feed_link", link);
+        values.put("feed_body", body);
+        values.put("feed_image", image);
+        values.put("feed_source", source);
+        values.put("feed_deleted", deleted);
+        values.put("feed_isnew", flag);
+        db.insertOrThrow("feeds", null, values);
+    }
+
+    @Test
+    public void rowsSurvive() {
+        SQLiteDatabase db = _helper.getReadableDatabase();
+        Cursor c = db.query(
+                FeedContract.Feeds.TABLE_NAME,
+                new String[]{
+                        FeedContract.Feeds._ID,
+                        FeedContract.Feeds.COLUMN_Title,
+                        FeedContract.Feeds.COLUMN_Link,
+                        FeedContract.Feeds.COLUMN_Flag,
+                        FeedContract.Feeds.COLUMN_Deleted,
+                        FeedContract.Feeds.COLUMN_Key,
+                        FeedContract.Feeds.COLUMN_Text,
+                        FeedContract.Feeds.COLUMN_Preview,
+                        FeedContract.Feeds.COLUMN_ImageKey,
+                        FeedContract.Feeds.COLUMN_Image
+                },
+                null, null, null, null, FeedContract.Feeds._ID
+        );
+        try {
+            assertEquals(4, c.getCount());
+
+            assertTrue(c.moveToNext());
+            assertEquals("Erster Titel", c.getString(1));
+            assertEquals(FeedContract.Flag.FAVORITE, c.getInt(3));
+            assertEquals(linkKey(c.getString(2)), c.getString(5));
+            assertEquals("Hallo Welt", c.getString(6).trim());
+            assertNotNull(c.getString(7));
+            assertNull(c.getString(8));
+
+            assertTrue(c.moveToNext());
+            assertEquals(FeedContract.Flag.NEW, c.getInt(3));
+            assertEquals(linkKey(c.getString(2)), c.getString(5));
+            assertEquals(ImageStore.keyOf(IMAGE), c.getString(8));
+            assertTrue(c.isNull(9));
+
+            assertTrue(c.moveToNext());
+            assertEquals(FeedContract.Flag.DELETED, c.getInt(4));
+            assertEquals(linkKey(c.getString(2)), c.getString(5));
+
+            assertTrue(c.moveToNext());
+            assertEquals(FeedContract.Flag.FAVORITE, c.getInt(3));
+            // the duplicate link keeps no key
+            assertTrue(c.isNull(5));
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void searchFindsOldRows() {
+        SQLiteDatabase db = _helper.getReadableDatabase();
+        Cursor c = db.rawQuery(
+                "SELECT rowid FROM " + FeedContract.Search.TABLE_NAME + " WHERE "
+                        + FeedContract.Search.TABLE_NAME + " MATCH ?",
+                new String[]{FeedContract.matchQuery("welt")}
+        );
+        try {
+            assertTrue(c.moveToFirst());
+            assertEquals(1, c.getLong(0));
+            assertFalse(c.moveToNext());
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void queriesUseIndexes() {
+        SQLiteDatabase db = _helper.getReadableDatabase();
+        String table = FeedContract.Feeds.TABLE_NAME;
+        assertIndexed(db, "SELECT * FROM " + table
+                + " WHERE " + FeedContract.DEFAULT_SELECTION
+                + " ORDER BY " + FeedContract.DEFAULT_SORTORDER, "0", "1");
+        assertIndexed(db, "SELECT * FROM " + table
+                + " WHERE " + FeedContract.DEFAULT_SELECTION_ADD
+                + " ORDER BY " + FeedContract.DEFAULT_SORTORDER, "0");
+        assertIndexed(db, "SELECT " + FeedContract.Feeds.COLUMN_Key + " FROM " + table
+                + " WHERE " + FeedContract.Feeds.COLUMN_Key + "=?", "x");
+    }
+
+    private static void assertIndexed(SQLiteDatabase db, String sql, String... args) {
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = c.getColumnIndexOrThrow("detail");
+            assertTrue(c.getCount() > 0);
+            while (c.moveToNext()) {
+                String plan = c.getString(detail);
+                assertFalse(sql + ": " + plan, plan.startsWith("SCAN"));
+                assertFalse(sql + ": " + plan, plan.contains("TEMP B-TREE"));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static String linkKey(String link) {
+        FeedItem item = new FeedItem();
+        item.link = link;
+        return FeedDedup.linkKey(item);
+    }
+}
@@ -2,118 +2,149 @@ package de.vibora.viborafeed;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.support.v4.content.WakefulBroadcastReceiver;
 import android.util.Log;
 
-import org.w3c.dom.Document;
-
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Der Alarm, der früher einmal ein Service war.
- * Es sieht/sah so aus, als könne man hier nicht auf {@link ViboraApp#getContextOfApplication()}
- * zugreifen.
+ * Ab API 21 plant er den Refresh mit dem JobScheduler ({@link RefreshJobService}): der Job
+ * läuft nur mit Netz, wird mit exponential backoff wiederholt und vom System mit anderen
+ * Syncs zusammengelegt. Davor wird ein nicht weckender Alarm gesetzt, der den Refresh im
+ * {@link RefreshService} (mit WakeLock) startet. Ohne Netz wartet dort der
+ * {@link NetworkReceiver} auf eine Verbindung.
  */
-public class Alarm extends BroadcastReceiver {
+public class Alarm extends WakefulBroadcastReceiver {
 
-    @Override
-    public void onReceive(Context context, Intent intent) {
-
-        AsyncTask<Object, Void, Void> asyncTask = new AsyncTask<Object, Void, Void>() {
-            @Override
-            protected Void doInBackground(Object... objs) {
-                Context ctx = (Context) objs[0];
-
-                SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(ctx);
-                Refresher refresher = Refresher.ME(ctx);
-
-                if (refresher.isOnline()) {
-                    if (pref.getBoolean("isRetry", false)) {
-                        if (BuildConfig.DEBUG) {
-                            refresher.error("Online again!", "repeating alarm set");
-                        }
-                        Log.d(ViboraApp.TAG, "last retry!");
-                        start(ctx);
-                    }
-                } else {
-                    if (BuildConfig.DEBUG) {
-                        refresher.error(
-                                "not Online",
-                                "Retry alarm in seconds: " + ViboraApp.Config.RETRYSEC_AFTER_OFFLINE
-                        );
-                    }
-                    Log.w(ViboraApp.TAG, "Retry alarm in seconds: " + ViboraApp.Config.RETRYSEC_AFTER_OFFLINE);
-                    ViboraApp.alarm.retry(ctx, ViboraApp.Config.RETRYSEC_AFTER_OFFLINE);
-                    return null;
-                }
+    /**
+     * request code des Alarms für einen erneuten Versuch (der reguläre hat 0)
+     */
+    private static final int RETRY_REQUEST = 1;
 
-                String rssurl1 = ViboraApp.Source1.path;
-                int expunge1 = ViboraApp.Source1.expunge;
+    /**
+     * der Job und der Alarm dürfen nicht gleichzeitig refreshen
+     */
+    private static final AtomicBoolean sRunning = new AtomicBoolean(false);
 
-                String rssurl2 = pref.getString("rss_url", ViboraApp.Source2.path);
-                int expunge2 = ViboraApp.Source2.expunge;
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        startWakefulService(context, new Intent(context, RefreshService.class));
+    }
 
-                refresher._newFeeds.clear();
-                Document doc = refresher.getDoc(rssurl1, expunge1);
-                refresher.insertToDb(doc, expunge1, ViboraApp.Source1.id);
+    /**
+     * Holt alle Quellen, schreibt die neuen Feeds in die DB und zeigt die Notifikationen.
+     * Blockiert, muss also im Hintergrund laufen. Läuft schon ein Refresh, passiert nichts.
+     *
+     * @param ctx the context
+     * @return false, wenn offline oder eine Quelle nicht erreichbar war und es später
+     * noch einmal versucht werden sollte
+     */
+    public static boolean refresh(Context ctx) {
+        if (!sRunning.compareAndSet(false, true)) {
+            Log.d(ViboraApp.TAG, "refresh is already running");
+            return true;
+        }
+        try {
+            SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(ctx);
+            Refresher refresher = Refresher.ME(ctx);
+
+            if (!refresher.isOnline()) {
+                if (BuildConfig.DEBUG) refresher.error("not Online", "waiting for network");
+                Log.w(ViboraApp.TAG, "not online");
+                return false;
+            }
 
-                if (!rssurl2.equals("")) {
-                    doc = refresher.getDoc(rssurl2, expunge2);
-                    refresher.insertToDb(doc, expunge2, ViboraApp.Source2.id);
-                }
-                refresher.sortFeeds();
-                if (refresher._newFeeds.size() > 0) {
-
-                    Intent notificationIntent = new Intent(ctx, MainActivity.class);
-                    notificationIntent.setFlags(
-                            Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP
-                    );
-                    PendingIntent pi = PendingIntent.getActivity(ctx, 0, notificationIntent, 0);
-
-                    if (ViboraApp.withGui) {
-                        refresher.makeNotify(pi);
-                    } else {
-                        refresher.makeNotifies(pi);
-                    }
-                    Intent intent = new Intent(ctx.getString(R.string.serviceHasNews));
-                    intent.putExtra("count", refresher._newFeeds.size());
-                    ctx.sendBroadcast(intent);
+            refresher._newFeeds.clear();
+            RefreshMetrics metrics = refresher.startMetrics();
+            boolean complete = new RefreshScheduler(refresher).run(ViboraApp.getSources(pref));
+            refresher.sortFeeds();
+            if (refresher._newFeeds.size() > 0) {
+                // only the feeds with an own notification, with a short timeout
+                refresher.fetchNotifyThumbnails(
+                        ViboraApp.withGui ? 1 : ViboraApp.Config.MAX_CHILD_NOTIFICATIONS
+                );
+                long start = System.nanoTime();
+
+                Intent notificationIntent = new Intent(ctx, MainActivity.class);
+                notificationIntent.setFlags(
+                        Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP
+                );
+                PendingIntent pi = PendingIntent.getActivity(ctx, 0, notificationIntent, 0);
+
+                if (ViboraApp.withGui) {
+                    refresher.makeNotify(pi);
+                } else {
+                    refresher.makeNotifies(pi);
                 }
-                return null;
+                Intent intent = new Intent(ctx.getString(R.string.serviceHasNews));
+                intent.putExtra("count", refresher._newFeeds.size());
+                ctx.sendBroadcast(intent);
+                metrics.add(RefreshMetrics.ALL_SOURCES, RefreshMetrics.NOTIFY,
+                        System.nanoTime() - start, 0, refresher._newFeeds.size());
             }
-        };
-        asyncTask.execute(context);
+            // the rows are visible and notified already, the other images may take a while
+            refresher.fetchThumbnails();
+            metrics.save(ctx);
+            HttpClient.ME(ctx).flush();
+            return complete;
+        } finally {
+            sRunning.set(false);
+        }
     }
 
     /**
-     * Sollte keine Verbindung bestehen, wird der Alarm in RETRYSEC_AFTER_OFFLINE Sekunden erneut
-     * aufgerufen.
+     * Nur vor API 21: ist das Gerät offline, wird der {@link NetworkReceiver} aktiviert.
+     * Sonst wird es nach {@link ViboraApp.Config#RETRY_BACKOFF_SEC} sec (mit jedem Versuch
+     * doppelt so lange) erneut versucht, max {@link ViboraApp.Config#MAX_RETRIES} mal.
      *
      * @param context the context
-     * @param sec Sekunden bis der neue Versuch starten soll
      * @see ViboraApp.Config
      */
-    public void retry(Context context, long sec) {
+    public void retry(Context context) {
+        if (!Refresher.ME(context).isOnline()) {
+            Log.w(ViboraApp.TAG, "wait for network");
+            NetworkReceiver.setEnabled(context, true);
+            return;
+        }
         SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(context);
+        int retries = pref.getInt("retryCount", 0);
+        if (retries >= ViboraApp.Config.MAX_RETRIES) {
+            Log.w(ViboraApp.TAG, "giving up until next alarm");
+            pref.edit().putInt("retryCount", 0).apply();
+            return;
+        }
+        pref.edit().putInt("retryCount", retries + 1).apply();
+        long sec = ViboraApp.Config.RETRY_BACKOFF_SEC << retries;
+        Log.w(ViboraApp.TAG, "Retry alarm in seconds: " + sec);
+
         AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         Intent i = new Intent(context, Alarm.class);
-        pref.edit().putBoolean("isRetry", true).apply();
-        PendingIntent pi = PendingIntent.getBroadcast(context, 0, i, 0);
-        am.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + sec * 1000L, pi);
+        PendingIntent pi = PendingIntent.getBroadcast(context, RETRY_REQUEST, i, 0);
+        am.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + sec * 1000L, pi);
+    }
+
+    /**
+     * Nur vor API 21: nach einem erfolgreichen Refresh fangen die Versuche wieder bei 0 an.
+     *
+     * @param context the context
+     */
+    public void resetRetries(Context context) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putInt("retryCount", 0).apply();
     }
 
     /**
-     * Startet den Alarm. Die Methode legt einen Alarm an, der regelmäßig einen Broadcast
-     * sendet. Sollte als Zeit in den einstellungen etwas größer als 4 Minuten eingestellt
-     * sein, so varriert die Alarmzeit (beim Anlegen des Alarms!!) um 3 Min.
+     * Startet den regelmäßigen Refresh im eingestellten Intervall und einen sofortigen
+     * Refresh. Ab API 21 ist das ein periodischer Job, davor ein Alarm, der das Gerät nicht
+     * weckt und daher mit dem nächsten Aufwachen zusammenfällt.
      *
      * @param context the context
      */
@@ -124,22 +155,21 @@ public class Alarm extends BroadcastReceiver {
                 pref.getString("rss_sec", ViboraApp.Config.DEFAULT_rsssec)
         ) * 1000L;
 
-        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Intent i = new Intent(context, Alarm.class);
-        pref.edit().putBoolean("isRetry", false).apply();
-        PendingIntent pi = PendingIntent.getBroadcast(context, 0, i, 0);
-
-        long mod = 0;
-        if (refreshInterval >= 240000) { // more than 4 minutes
-            Random r = new Random(System.currentTimeMillis());
-            mod = r.nextInt(360000) - 180000; // plusminus 3min
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            RefreshJobService.schedule(context, refreshInterval);
+            RefreshJobService.now(context);
+        } else {
+            AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            Intent i = new Intent(context, Alarm.class);
+            PendingIntent pi = PendingIntent.getBroadcast(context, 0, i, 0);
+            am.setInexactRepeating(
+                    AlarmManager.ELAPSED_REALTIME,
+                    SystemClock.elapsedRealtime() + refreshInterval,
+                    refreshInterval,
+                    pi
+            );
+            startWakefulService(context, new Intent(context, RefreshService.class));
         }
-        am.setInexactRepeating(
-                AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                500L,
-                refreshInterval + mod,
-                pi
-        );
         Log.d(ViboraApp.TAG, "Alarm started.");
     }
 
@@ -149,21 +179,26 @@ public class Alarm extends BroadcastReceiver {
      * @param context the context
      */
     public void stop(Context context) {
-        Intent i = new Intent(context, Alarm.class);
-        PendingIntent pi = PendingIntent.getBroadcast(context, 0, i, 0);
-        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        am.cancel(pi);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            RefreshJobService.cancel(context);
+        } else {
+            Intent i = new Intent(context, Alarm.class);
+            AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            am.cancel(PendingIntent.getBroadcast(context, 0, i, 0));
+            am.cancel(PendingIntent.getBroadcast(context, RETRY_REQUEST, i, 0));
+            NetworkReceiver.setEnabled(context, false);
+        }
         Log.d(ViboraApp.TAG, "Alarm stopped.");
     }
 
     /**
      * Restart. Wird von {@link MainActivity#onCreate(Bundle)} genutzt, um beim Starten der
-     * App nach neuen Feeds zu schauen.
+     * App nach neuen Feeds zu schauen. Der periodische Job bleibt dabei erhalten.
      *
      * @param context the context
      */
     public void restart(Context context) {
-        stop(context);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) stop(context);
         start(context);
     }
-}
\ No newline at end of file
+}
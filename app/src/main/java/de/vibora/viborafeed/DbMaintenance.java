@@ -0,0 +1,168 @@
+package de.vibora.viborafeed;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Die Wartung der DB und der Vorschaubilder. Sie läuft im Hintergrund, wenn das Gerät
+ * nicht genutzt wird, und nicht mehr beim Öffnen der App:
+ * <ul>
+ *     <li>gelöschte Feeds entfernen und alte Feeds löschen (in Blöcken, siehe
+ *     {@link FeedContentProvider#CALL_MAINTENANCE})</li>
+ *     <li>freie Seiten der Datei zurückgeben (auto_vacuum INCREMENTAL). Eine alte
+ *     Datei wird dafür einmal mit einem vollen VACUUM umgestellt, aber nur aus dem
+ *     {@link MaintenanceJobService}, also im Leerlauf und beim Laden.</li>
+ *     <li>PRAGMA optimize bzw. ANALYZE</li>
+ *     <li>Vorschaubilder ohne Feed löschen</li>
+ * </ul>
+ * Was die Schritte gebraucht und freigegeben haben, steht in der Tabelle
+ * {@link FeedContract.Metrics} (Quelle {@link RefreshMetrics#ALL_SOURCES}).
+ *
+ * @see MaintenanceJobService
+ * @see MaintenanceService
+ */
+public class DbMaintenance {
+    private static final AtomicBoolean sRunning = new AtomicBoolean(false);
+
+    private DbMaintenance() {}
+
+    /**
+     * Plant die Wartung, falls das noch nicht passiert ist. Ab API 21 ist das ein Job,
+     * der nur im Leerlauf und beim Laden läuft, davor ein Alarm etwa einmal am Tag, der
+     * das Gerät nicht weckt.
+     *
+     * @param ctx the context
+     */
+    public static void schedule(Context ctx) {
+        long interval = ViboraApp.Config.MAINTENANCE_INTERVAL_HOURS * AlarmManager.INTERVAL_HOUR;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            MaintenanceJobService.schedule(ctx, interval);
+            return;
+        }
+        Intent i = new Intent(ctx, MaintenanceService.class);
+        if (PendingIntent.getService(ctx, 0, i, PendingIntent.FLAG_NO_CREATE) != null) return;
+        AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        am.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + interval,
+                interval,
+                PendingIntent.getService(ctx, 0, i, 0)
+        );
+    }
+
+    /**
+     * Führt die Wartung aus. Blockiert, muss also im Hintergrund laufen. Läuft sie
+     * schon, passiert nichts.
+     * <p>
+     * Die Phasen laufen in kurzen Schritten ({@link FeedContentProvider#CALL_MAINTENANCE}),
+     * vor jedem Schritt wird stop geprüft. Ein Schritt, der schon läuft, wird noch
+     * beendet, der Rest kommt beim nächsten Mal dran.
+     * </p>
+     *
+     * @param ctx the context
+     * @param idle true, wenn das Gerät nicht genutzt wird und lädt: nur dann darf die
+     *             Datei mit einem vollen VACUUM umgestellt werden
+     * @param stop wird true, wenn die Wartung aufhören soll
+     * @return false, wenn sie wegen stop nicht fertig wurde
+     */
+    public static boolean run(Context ctx, boolean idle, AtomicBoolean stop) {
+        if (!sRunning.compareAndSet(false, true)) {
+            Log.d(ViboraApp.TAG, "maintenance is already running");
+            return true;
+        }
+        try {
+            RefreshMetrics metrics = new RefreshMetrics();
+            ArrayList<String> phases = new ArrayList<>();
+            phases.add(RefreshMetrics.EXPUNGE);
+            phases.add(RefreshMetrics.AUTODELETE);
+            if (idle) phases.add(RefreshMetrics.VACUUM_CONVERT);
+            phases.add(RefreshMetrics.VACUUM);
+            phases.add(RefreshMetrics.OPTIMIZE);
+            for (String phase : phases) {
+                if (!runPhase(ctx, phase, stop, metrics)) break;
+            }
+
+            if (!stop.get()) {
+                long start = System.nanoTime();
+                long[] removed = removeUnusedThumbs(ctx, stop);
+                metrics.add(RefreshMetrics.ALL_SOURCES, RefreshMetrics.THUMBS,
+                        System.nanoTime() - start, removed[0], removed[1]);
+            }
+            metrics.save(ctx, RefreshMetrics.MAINTENANCE);
+            return !stop.get();
+        } finally {
+            sRunning.set(false);
+        }
+    }
+
+    /**
+     * Ruft die Schritte einer Phase auf, bis sie fertig ist oder stop kommt. Die Summe
+     * der Schritte wird als ein Eintrag in metrics gespeichert.
+     *
+     * @return false, wenn stop kam
+     */
+    private static boolean runPhase(Context ctx, String phase, AtomicBoolean stop, RefreshMetrics metrics) {
+        long[] sum = new long[3];
+        boolean done = false;
+        int steps = 0;
+        while (!done) {
+            if (stop.get()) break;
+            Bundle result = ctx.getContentResolver().call(
+                    FeedContentProvider.CONTENT_URI, FeedContentProvider.CALL_MAINTENANCE, phase, null
+            );
+            if (result == null) break;
+            long[] values = result.getLongArray(FeedContentProvider.MAINTENANCE_RESULT);
+            for (int i = 0; i < sum.length; i++) sum[i] += values[i];
+            done = result.getBoolean(FeedContentProvider.MAINTENANCE_DONE);
+            steps++;
+        }
+        if (steps > 0) metrics.add(RefreshMetrics.ALL_SOURCES, phase, sum[0], sum[1], sum[2]);
+        return !stop.get();
+    }
+
+    /**
+     * @return {bytes, Anzahl} der gelöschten Bilder
+     */
+    private static long[] removeUnusedThumbs(Context ctx, AtomicBoolean stop) {
+        HashSet<String> used = new HashSet<>();
+        Cursor c = ctx.getContentResolver().query(
+                FeedContentProvider.CONTENT_URI,
+                new String[]{FeedContract.Feeds.COLUMN_ImageKey},
+                FeedContract.Feeds.COLUMN_ImageKey + " IS NOT NULL", null, null
+        );
+        if (c == null) return new long[]{0, 0};
+        try {
+            while (c.moveToNext()) used.add(c.getString(0));
+        } finally {
+            c.close();
+        }
+
+        long olderThan = System.currentTimeMillis()
+                - ViboraApp.Config.UNUSED_THUMB_MIN_AGE_HOURS * AlarmManager.INTERVAL_HOUR;
+        long bytes = 0;
+        long count = 0;
+        for (File f : ImageStore.ME(ctx).unused(used, olderThan)) {
+            if (stop.get()) break;
+            long length = f.length();
+            if (f.delete()) {
+                bytes += length;
+                count++;
+            } else {
+                Log.w(ViboraApp.TAG, "can not delete " + f);
+            }
+        }
+        return new long[]{bytes, count};
+    }
+}
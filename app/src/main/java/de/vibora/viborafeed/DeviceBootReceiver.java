@@ -5,8 +5,8 @@ import android.content.Context;
 import android.content.Intent;
 
 /**
- * Mit diesem BroadcastReceiver wird der AlarmManager gestartet, sobald
- * das Gerät eingeschaltet wird.
+ * Mit diesem BroadcastReceiver wird der AlarmManager gestartet und die Wartung der DB
+ * geplant, sobald das Gerät eingeschaltet wird.
  */
 public class DeviceBootReceiver extends BroadcastReceiver {
     @Override
@@ -15,6 +15,7 @@ public class DeviceBootReceiver extends BroadcastReceiver {
         if (intent.getAction().equals(Intent.ACTION_BOOT_COMPLETED)) {
             if (ViboraApp.alarm == null) ViboraApp.alarm = new Alarm();
             ViboraApp.alarm.start(context);
+            DbMaintenance.schedule(context);
         }
     }
 }
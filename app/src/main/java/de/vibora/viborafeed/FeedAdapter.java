@@ -0,0 +1,237 @@
+package de.vibora.viborafeed;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextMenu;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Der FeedAdapter verknüpft die Zeilen eines {@link FeedSnapshot} mit den Feldern eines Views.
+ * Ein neuer Stand bindet nur die Zeilen neu, die sich laut Diff geändert haben.
+ */
+public class FeedAdapter extends RecyclerView.Adapter<FeedAdapter.ViewHolder> {
+    private final Context context;
+    private final Listener listener;
+    private Bitmap largeIcon;
+    private Drawable favoriteIcon;
+    private ThumbnailLoader thumbnails;
+    private SearchHighlighter highlighter = null;
+
+    private List<FeedRow> rows = Collections.emptyList();
+
+    /**
+     * Klick und Kontextmenü einer Zeile
+     */
+    public interface Listener {
+        void onClick(FeedRow row);
+
+        void onCreateContextMenu(ContextMenu menu, FeedRow row);
+    }
+
+    /**
+     * Hält die Views einer Zeile, damit findViewById() nicht bei jedem Binden läuft.
+     */
+    public class ViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnCreateContextMenuListener {
+        TextView title;
+        TextView date;
+        TextView body;
+        ImageView image;
+
+        ViewHolder(View view) {
+            super(view);
+            title = (TextView) view.findViewById(R.id.feedTitle);
+            date = (TextView) view.findViewById(R.id.feedDate);
+            body = (TextView) view.findViewById(R.id.feedBody);
+            image = (ImageView) view.findViewById(R.id.image);
+            view.setOnClickListener(this);
+            view.setOnCreateContextMenuListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) listener.onClick(rows.get(position));
+        }
+
+        @Override
+        public void onCreateContextMenu(ContextMenu menu, View v, ContextMenu.ContextMenuInfo menuInfo) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onCreateContextMenu(menu, rows.get(position));
+            }
+        }
+    }
+
+    public FeedAdapter(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        largeIcon = BitmapFactory.decodeResource(context.getResources(), R.mipmap.ic_launcher);
+        favoriteIcon = ContextCompat.getDrawable(context, R.drawable.favorite);
+        thumbnails = new ThumbnailLoader(ImageStore.ME(context));
+        setHasStableIds(true);
+    }
+
+    /**
+     * @return die angezeigten Zeilen (nicht ändern)
+     */
+    public List<FeedRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * Zeigt einen neuen Stand. Passt sein Diff zum angezeigten Stand, werden nur die
+     * geänderten Zeilen gemeldet, sonst die ganze Liste.
+     *
+     * @param snapshot der neue Stand
+     */
+    public void submit(FeedSnapshot snapshot) {
+        if (snapshot.rows == rows) return;
+        List<FeedRow> old = rows;
+        rows = snapshot.rows;
+        if (snapshot.diff != null && snapshot.base == old) {
+            snapshot.diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Ändert das Flag einer Zeile sofort, ohne auf den Loader zu warten.
+     *
+     * @param id die _ID der Zeile
+     * @param flag das neue Flag
+     * @return true, wenn die Zeile angezeigt wird
+     */
+    public boolean setFlag(long id, int flag) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).id != id) continue;
+            ArrayList<FeedRow> changed = new ArrayList<>(rows);
+            changed.set(i, rows.get(i).withFlag(flag));
+            rows = changed;
+            notifyItemChanged(i);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return rows.get(position).id;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.feed, parent, false);
+        return new ViewHolder(view);
+    }
+
+    /**
+     * Wegen Recycling sind entsprechende Else-Zweige sind nötig, da sonst Padding/Color aus einem
+     * alten View genutzt/recycled wird.
+     * <p>
+     * Sollte ein Bild existieren, wird ein Abstand zum Body-Text eingebaut. Das Bild selbst
+     * lädt der {@link ThumbnailLoader} im Hintergrund.
+     * </p>
+     * @param holder
+     * @param position
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        FeedRow row = rows.get(position);
+        View view = holder.itemView;
+
+        SearchHighlighter hl = highlighter();
+
+        TextView tt = holder.title;
+        if (hl != null) {
+            tt.setText(hl.highlight(row.title));
+        } else {
+            tt.setText(row.title);
+        }
+
+        TextView td = holder.date;
+        td.setText(FeedContract.getDate(row.date));
+
+        TextView tb = holder.body;
+        if (hl != null) {
+            tb.setText(hl.highlight(row.body));
+        } else {
+            tb.setText(row.body);
+        }
+
+        tt.setPadding(10, 20,  5, 0);
+        tb.setPadding(10,  0, 10, 0);
+
+        ImageView iv = holder.image;
+        if (row.imageKey != null) {
+            thumbnails.load(row.id, row.imageKey, iv);
+            iv.setPadding(20, 30, 10, 0);
+        } else {
+            thumbnails.cancel(iv);
+            if (row.source == ViboraApp.Source1.id) {
+                iv.setImageBitmap(largeIcon);
+                iv.setPadding(20, 30, 10, 0);
+            } else {
+                iv.setImageBitmap(null);
+                iv.setPadding( 0, 0, 0, 0);
+                tt.setPadding(20, 10,  5, 0);
+                tb.setPadding(20,  0, 10, 0);
+            }
+        }
+        if (row.flag == FeedContract.Flag.READED) {
+            int oldTxt = ContextCompat.getColor(context, R.color.colorOldText);
+            tt.setTextColor(oldTxt);
+            td.setTextColor(oldTxt);
+            tb.setTextColor(oldTxt);
+            iv.setAlpha(0.3f);
+            view.setBackgroundColor(ContextCompat.getColor(context, R.color.colorOld));
+            td.setBackground(null);
+        } else if (row.flag == FeedContract.Flag.FAVORITE) {
+            tt.setTextColor(ContextCompat.getColor(context, R.color.colorTitle));
+            td.setTextColor(ContextCompat.getColor(context, R.color.colorDate));
+            tb.setTextColor(ContextCompat.getColor(context, R.color.colorBody));
+            iv.setAlpha(1.0f);
+            view.setBackgroundColor(ContextCompat.getColor(context, R.color.colorBackground));
+            td.setBackground(favoriteIcon);
+        } else {
+            tt.setTextColor(ContextCompat.getColor(context, R.color.colorTitle));
+            td.setTextColor(ContextCompat.getColor(context, R.color.colorDate));
+            tb.setTextColor(ContextCompat.getColor(context, R.color.colorBody));
+            iv.setAlpha(1.0f);
+            view.setBackgroundColor(ContextCompat.getColor(context, R.color.colorBackground));
+            td.setBackground(null);
+        }
+    }
+
+    /**
+     * Der Highlighter wird nur neu gebaut, wenn sich die Suche geändert hat.
+     *
+     * @return der Highlighter der aktuellen Suche oder null, wenn nicht gesucht wird
+     */
+    private SearchHighlighter highlighter() {
+        String query = ViboraApp.query;
+        if (query.equals("")) return null;
+        if (highlighter == null || !highlighter.getQuery().equals(query)) {
+            highlighter = new SearchHighlighter(query);
+        }
+        return highlighter;
+    }
+}
@@ -1,15 +1,33 @@
 package de.vibora.viborafeed;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TimeZone;
 
 /**
  * Konstanten und CRUD Funktionen zum Zugriff auf Feeds in der Datenbank via URI.
@@ -33,6 +51,9 @@ public class FeedContentProvider extends ContentProvider {
     // used for the UriMacher
     private static final int FEEDS = 10;
     private static final int FEED_ID = 20;
+    private static final int SEARCH = 30;
+    private static final int METRICS = 40;
+    private static final int METRICS_SUMMARY = 50;
 
     private static final String BASE_PATH = "feeds";
 
@@ -41,14 +62,155 @@ public class FeedContentProvider extends ContentProvider {
             + "/" + BASE_PATH
     );
 
+    /**
+     * Volltextsuche über {@link FeedContract.Search}. Zu nutzen mit
+     * FeedContract.SELECTION_SEARCH und FeedContract.searchArgs().
+     */
+    public static final Uri SEARCH_URI = Uri.parse(
+            "content://" + AUTHORITY
+            + "/" + BASE_PATH + "/search"
+    );
+
+    /**
+     * Die Zeiten der Refreshs, siehe {@link FeedContract.Metrics}.
+     */
+    public static final Uri METRICS_URI = Uri.parse(
+            "content://" + AUTHORITY
+            + "/" + FeedContract.Metrics.TABLE_NAME
+    );
+
+    /**
+     * p50, p95 und max der Zeiten je Quelle und Schritt (nur lesen). Ist eine
+     * selection angegeben, wird sie auf die Tabelle metrics angewendet.
+     */
+    public static final Uri METRICS_SUMMARY_URI = Uri.parse(
+            "content://" + AUTHORITY
+            + "/" + FeedContract.Metrics.TABLE_NAME + "/summary"
+    );
+
+    /**
+     * Unter dieser URI werden Änderungen einer Quelle gemeldet, siehe {@link #sourceUri(int)}.
+     * Geänderte Zeilen werden darunter gemeldet ({@link #rowUri(int, long)}), so bekommt ein
+     * Observer mit notifyForDescendants auf eine Quelle nur deren Änderungen. Betrifft eine
+     * Änderung viele Zeilen (update/delete mit selection), wird CONTENT_URI gemeldet.
+     */
+    private static final String SOURCE_PATH = "source";
+
+    /**
+     * Query Parameter für ein LIMIT, z.B. CONTENT_URI?limit=50 (nur beim Lesen)
+     */
+    public static final String QUERY_LIMIT = "limit";
+
+    /**
+     * Methode für {@link #call(String, String, Bundle)}: ein kurzer Schritt der Wartung,
+     * arg ist die Phase ({@link RefreshMetrics#EXPUNGE}, {@link RefreshMetrics#AUTODELETE},
+     * {@link RefreshMetrics#VACUUM_CONVERT}, {@link RefreshMetrics#VACUUM} oder
+     * {@link RefreshMetrics#OPTIMIZE}). Die {@link DbMaintenance} ruft so lange auf, bis
+     * {@link #MAINTENANCE_DONE} kommt, und kann zwischen zwei Schritten aufhören.
+     */
+    public static final String CALL_MAINTENANCE = "maintenance";
+
+    /**
+     * Ergebnis von {@link #CALL_MAINTENANCE}: long[]{ns, bytes, count} des Schritts
+     */
+    public static final String MAINTENANCE_RESULT = "result";
+
+    /**
+     * Ergebnis von {@link #CALL_MAINTENANCE}: true, wenn die Phase nichts mehr zu tun hat
+     */
+    public static final String MAINTENANCE_DONE = "done";
+
+    /**
+     * Wert von PRAGMA auto_vacuum für INCREMENTAL
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
     private static final UriMatcher sURIMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    /**
+     * Bei der Suche sind feeds und feeds_fts gejoint, daher brauchen die Spalten den
+     * Tabellennamen. Dazu kommt das Snippet um den Treffer herum.
+     */
+    private static final HashMap<String, String> sSearchProjection = new HashMap<>();
+
+    /**
+     * Ist nicht null, solange der aktuelle Thread in {@link #bulkInsert(Uri, ContentValues[])}
+     * oder {@link #applyBatch(ArrayList)} ist. Dann werden die URIs gesammelt und erst nach der
+     * Transaktion jede einmal benachrichtigt.
+     */
+    private final ThreadLocal<LinkedHashSet<Uri>> _pending = new ThreadLocal<>();
+
     /**
      * mappt URI auf FEED bzw. FEED_ID, je nachdem ob eine Nummer angehangen worden ist
      */
     static {
         sURIMatcher.addURI(AUTHORITY, BASE_PATH, FEEDS);
         sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/#", FEED_ID);
+        sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/search", SEARCH);
+        sURIMatcher.addURI(AUTHORITY, FeedContract.Metrics.TABLE_NAME, METRICS);
+        sURIMatcher.addURI(AUTHORITY, FeedContract.Metrics.TABLE_NAME + "/summary", METRICS_SUMMARY);
+
+        String[] columns = {
+                FeedContract.Feeds._ID,
+                FeedContract.Feeds.COLUMN_Title,
+                FeedContract.Feeds.COLUMN_Date,
+                FeedContract.Feeds.COLUMN_Link,
+                FeedContract.Feeds.COLUMN_Body,
+                FeedContract.Feeds.COLUMN_ImageKey,
+                FeedContract.Feeds.COLUMN_Source,
+                FeedContract.Feeds.COLUMN_Deleted,
+                FeedContract.Feeds.COLUMN_Flag,
+                FeedContract.Feeds.COLUMN_Key,
+                FeedContract.Feeds.COLUMN_Text,
+                FeedContract.Feeds.COLUMN_Preview
+        };
+        for (String col : columns) {
+            sSearchProjection.put(col, FeedContract.Feeds.TABLE_NAME + "." + col + " AS " + col);
+        }
+        // snippet of the text column (index 1), the list highlights the words itself
+        sSearchProjection.put(
+                FeedContract.Search.COLUMN_Snippet,
+                "snippet(" + FeedContract.Search.TABLE_NAME + ", '', '', '\u2026', 1, 24) AS "
+                        + FeedContract.Search.COLUMN_Snippet
+        );
+    }
+
+    /**
+     * Hier werden neue Zeilen einer Quelle gemeldet.
+     *
+     * @param source die Quelle, z.B. {@link ViboraApp.Source1#id}
+     * @return the uri
+     */
+    public static Uri sourceUri(int source) {
+        return CONTENT_URI.buildUpon()
+                .appendPath(SOURCE_PATH)
+                .appendPath(Integer.toString(source))
+                .build();
+    }
+
+    /**
+     * Hier wird die Änderung (update, delete) einer einzelnen Zeile gemeldet.
+     *
+     * @param source die Quelle der Zeile
+     * @param id die _ID der Zeile
+     * @return the uri
+     */
+    public static Uri rowUri(int source, long id) {
+        return ContentUris.withAppendedId(sourceUri(source), id);
+    }
+
+    /**
+     * @param uri eine gemeldete URI
+     * @return die _ID, wenn uri von {@link #rowUri(int, long)} kommt, sonst -1
+     */
+    public static long rowIdOf(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 4 || !SOURCE_PATH.equals(segments.get(1))) return -1;
+        try {
+            return Long.parseLong(segments.get(3));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     @Override
@@ -66,6 +228,7 @@ public class FeedContentProvider extends ContentProvider {
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
         queryBuilder.setTables(FeedContract.Feeds.TABLE_NAME);
 
+        Uri notifyUri = uri;
         int uriType = sURIMatcher.match(uri);
         switch (uriType) {
 
@@ -78,15 +241,36 @@ public class FeedContentProvider extends ContentProvider {
                 );
                 break;
 
+            case SEARCH:
+                queryBuilder.setTables(
+                        FeedContract.Feeds.TABLE_NAME + " JOIN " + FeedContract.Search.TABLE_NAME
+                        + " ON " + FeedContract.Feeds.TABLE_NAME + "." + FeedContract.Feeds._ID
+                        + "=" + FeedContract.Search.TABLE_NAME + ".docid"
+                );
+                queryBuilder.setProjectionMap(sSearchProjection);
+                if (TextUtils.isEmpty(sortOrder)) sortOrder = FeedContract.SEARCH_SORTORDER;
+                notifyUri = CONTENT_URI;
+                break;
+
+            case METRICS:
+                queryBuilder.setTables(FeedContract.Metrics.TABLE_NAME);
+                break;
+
+            case METRICS_SUMMARY:
+                return metricsSummary(selection, selectionArgs);
+
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
 
+        String limit = uri.getQueryParameter(QUERY_LIMIT);
+        if (limit != null) notifyUri = uri.buildUpon().clearQuery().build();
+
         SQLiteDatabase db = _database.getWritableDatabase();
         Cursor cursor = queryBuilder.query(
-                db, projection, selection, selectionArgs, null, null, sortOrder
+                db, projection, selection, selectionArgs, null, null, sortOrder, limit
         );
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notifyUri);
 
         return cursor;
     }
@@ -106,16 +290,381 @@ public class FeedContentProvider extends ContentProvider {
         switch (uriType) {
 
             case FEEDS:
-                id = sqlDB.insert(FeedContract.Feeds.TABLE_NAME, null, contentValues);
+                // -1, if the UNIQUE feed_key is already in the db
+                id = sqlDB.insertWithOnConflict(
+                        FeedContract.Feeds.TABLE_NAME, null, contentValues,
+                        SQLiteDatabase.CONFLICT_IGNORE
+                );
+                if (id >= 0) notifyChange(sourceUri(sourceOf(contentValues)));
                 break;
 
+            case METRICS:
+                id = sqlDB.insert(FeedContract.Metrics.TABLE_NAME, null, contentValues);
+                trimMetrics(sqlDB);
+                if (id >= 0) notifyChange(uri);
+                return Uri.parse(FeedContract.Metrics.TABLE_NAME + "/" + id);
+
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return Uri.parse(BASE_PATH + "/" + id);
     }
 
+    /**
+     * Fügt alle values in einer Transaktion ein und benachrichtigt danach jede betroffene
+     * Quelle einmal.
+     *
+     * @param uri the uri
+     * @param values die neuen Zeilen
+     * @return Anzahl der eingefügten Zeilen
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        String table;
+        switch (sURIMatcher.match(uri)) {
+            case FEEDS:
+                table = FeedContract.Feeds.TABLE_NAME;
+                break;
+            case METRICS:
+                table = FeedContract.Metrics.TABLE_NAME;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+        boolean feeds = table.equals(FeedContract.Feeds.TABLE_NAME);
+        SQLiteDatabase sqlDB = _database.getWritableDatabase();
+        int count = 0;
+        LinkedHashSet<Uri> pending = new LinkedHashSet<>();
+        _pending.set(pending);
+        sqlDB.beginTransaction();
+        try {
+            for (ContentValues cv : values) {
+                long id = sqlDB.insertWithOnConflict(
+                        table, null, cv,
+                        SQLiteDatabase.CONFLICT_IGNORE
+                );
+                if (id < 0) continue;
+                count++;
+                notifyChange(feeds ? sourceUri(sourceOf(cv)) : uri);
+            }
+            if (!feeds) trimMetrics(sqlDB);
+            sqlDB.setTransactionSuccessful();
+        } finally {
+            sqlDB.endTransaction();
+            _pending.remove();
+        }
+        notifyAll(pending);
+        return count;
+    }
+
+    /**
+     * Führt alle operations in einer Transaktion aus. Die Änderungen werden gesammelt und
+     * danach jede betroffene URI einmal benachrichtigt.
+     *
+     * @param operations die Operationen
+     * @return die Ergebnisse der Operationen
+     * @throws OperationApplicationException wenn eine Operation fehlschlägt
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase sqlDB = _database.getWritableDatabase();
+        ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        LinkedHashSet<Uri> pending = new LinkedHashSet<>();
+        _pending.set(pending);
+        sqlDB.beginTransaction();
+        try {
+            for (int i = 0; i < operations.size(); i++) {
+                results[i] = operations.get(i).apply(this, results, i);
+            }
+            sqlDB.setTransactionSuccessful();
+        } finally {
+            sqlDB.endTransaction();
+            _pending.remove();
+        }
+        notifyAll(pending);
+        return results;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (CALL_MAINTENANCE.equals(method)) return maintenanceStep(arg);
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Ein Schritt der Wartung, siehe {@link #CALL_MAINTENANCE}:
+     * <ul>
+     *     <li>EXPUNGE: entfernt gelöschte Feeds nach den expunge Tagen der Quellen</li>
+     *     <li>AUTODELETE: löscht Feeds nach den "autodelete" Tagen der Einstellungen
+     *     (außer Favoriten)</li>
+     *     <li>VACUUM_CONVERT: stellt eine alte Datei mit einem vollen VACUUM auf
+     *     auto_vacuum INCREMENTAL um. Das sperrt die DB und schreibt die ganze Datei neu,
+     *     also nur, wenn das Gerät nicht genutzt wird und lädt.</li>
+     *     <li>VACUUM: gibt {@link ViboraApp.Config#VACUUM_CHUNK_PAGES} freie Seiten der
+     *     Datei zurück (nur bei auto_vacuum INCREMENTAL)</li>
+     *     <li>OPTIMIZE: aktualisiert die Statistiken für den Query Planer</li>
+     * </ul>
+     * Ein Schritt ändert max {@link ViboraApp.Config#MAINTENANCE_CHUNK_ROWS} Zeilen je
+     * Quelle, so blockiert die Wartung die Liste und einen Refresh nie lange.
+     *
+     * @param phase die Phase
+     * @return {@link #MAINTENANCE_RESULT} und {@link #MAINTENANCE_DONE}
+     */
+    private Bundle maintenanceStep(String phase) {
+        SQLiteDatabase db = _database.getWritableDatabase();
+        long start = System.nanoTime();
+        long bytes = 0;
+        long count = 0;
+        boolean done = true;
+        int chunk = ViboraApp.Config.MAINTENANCE_CHUNK_ROWS;
+
+        if (RefreshMetrics.EXPUNGE.equals(phase)) {
+            String where = FeedContract.Feeds._ID + " IN (SELECT " + FeedContract.Feeds._ID
+                    + " FROM " + FeedContract.Feeds.TABLE_NAME + " WHERE "
+                    + FeedContract.Feeds.COLUMN_Date + "<? AND "
+                    + FeedContract.Feeds.COLUMN_Deleted + "=? AND "
+                    + FeedContract.Feeds.COLUMN_Source + "=? LIMIT " + chunk + ")";
+            String deleted = Integer.toString(FeedContract.Flag.DELETED);
+            int rows1 = db.delete(FeedContract.Feeds.TABLE_NAME, where, new String[]{
+                    daysAgo(ViboraApp.Source1.expunge), deleted, ViboraApp.Source1.number
+            });
+            int rows2 = db.delete(FeedContract.Feeds.TABLE_NAME, where, new String[]{
+                    daysAgo(ViboraApp.Source2.expunge), deleted, ViboraApp.Source2.number
+            });
+            count = rows1 + rows2;
+            done = rows1 < chunk && rows2 < chunk;
+        } else if (RefreshMetrics.AUTODELETE.equals(phase)) {
+            int days = PreferenceManager.getDefaultSharedPreferences(getContext()).getInt("autodelete", 0);
+            if (days > 0) {
+                // rows already marked must not match again, or the chunks never end
+                String where = FeedContract.Feeds._ID + " IN (SELECT " + FeedContract.Feeds._ID
+                        + " FROM " + FeedContract.Feeds.TABLE_NAME + " WHERE "
+                        + FeedContract.Feeds.COLUMN_Date + "<? AND "
+                        + FeedContract.Feeds.COLUMN_Flag + "<>? AND "
+                        + FeedContract.Feeds.COLUMN_Deleted + "<>? LIMIT " + chunk + ")";
+                ContentValues values = new ContentValues();
+                values.put(FeedContract.Feeds.COLUMN_Deleted, FeedContract.Flag.DELETED);
+                count = db.update(FeedContract.Feeds.TABLE_NAME, values, where, new String[]{
+                        daysAgo(days),
+                        Integer.toString(FeedContract.Flag.FAVORITE),
+                        Integer.toString(FeedContract.Flag.DELETED)
+                });
+                done = count < chunk;
+            }
+        } else if (RefreshMetrics.VACUUM.equals(phase) || RefreshMetrics.VACUUM_CONVERT.equals(phase)) {
+            long pageSize = pragma(db, "page_size");
+            long pages = pragma(db, "page_count");
+            try {
+                boolean incremental = pragma(db, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL;
+                if (RefreshMetrics.VACUUM_CONVERT.equals(phase)) {
+                    if (!incremental) {
+                        // an existing file switches to incremental only with one full VACUUM
+                        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                        db.execSQL("VACUUM");
+                    }
+                } else if (incremental) {
+                    long free = pragma(db, "freelist_count");
+                    if (free > 0) {
+                        exhaust(db, "PRAGMA incremental_vacuum(" + ViboraApp.Config.VACUUM_CHUNK_PAGES + ")");
+                        long left = pragma(db, "freelist_count");
+                        done = left == 0 || left >= free;
+                    }
+                }
+            } catch (SQLiteException e) {
+                // e.g. a statement of the list is still running: next time
+                Log.w(ViboraApp.TAG, "vacuum: " + e.getMessage());
+                done = true;
+            }
+            count = pages - pragma(db, "page_count");
+            bytes = count * pageSize;
+        } else if (RefreshMetrics.OPTIMIZE.equals(phase)) {
+            if (hasOptimize(db)) {
+                exhaust(db, "PRAGMA optimize");
+            } else {
+                db.execSQL("ANALYZE");
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown maintenance phase: " + phase);
+        }
+        if (count > 0 && (RefreshMetrics.EXPUNGE.equals(phase) || RefreshMetrics.AUTODELETE.equals(phase))) {
+            notifyChange(CONTENT_URI);
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(MAINTENANCE_RESULT, new long[]{System.nanoTime() - start, bytes, count});
+        result.putBoolean(MAINTENANCE_DONE, done);
+        return result;
+    }
+
+    private static String daysAgo(int days) {
+        Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        c.setTime(new Date());
+        c.add(Calendar.DAY_OF_MONTH, -1 * days);
+        return FeedContract.dbFriendlyDate(c.getTime());
+    }
+
+    private static long pragma(SQLiteDatabase db, String name) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + name, null);
+    }
+
+    /**
+     * Für PRAGMAs, die Zeilen liefern könnten: execSQL lässt das nicht zu.
+     */
+    private static void exhaust(SQLiteDatabase db, String sql) {
+        Cursor c = db.rawQuery(sql, null);
+        try {
+            c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * PRAGMA optimize gibt es ab SQLite 3.18, ältere Versionen ignorieren es einfach.
+     */
+    private static boolean hasOptimize(SQLiteDatabase db) {
+        String[] version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null).split("\\.");
+        try {
+            int major = Integer.parseInt(version[0]);
+            int minor = version.length > 1 ? Integer.parseInt(version[1]) : 0;
+            return major > 3 || (major == 3 && minor >= 18);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Löscht alles bis auf die letzten MAX_METRICS_ROWS Zeilen der Tabelle metrics.
+     */
+    private static void trimMetrics(SQLiteDatabase db) {
+        db.execSQL(
+                "DELETE FROM " + FeedContract.Metrics.TABLE_NAME + " WHERE " + FeedContract.Metrics._ID
+                        + " <= (SELECT MAX(" + FeedContract.Metrics._ID + ") FROM "
+                        + FeedContract.Metrics.TABLE_NAME + ") - " + ViboraApp.Config.MAX_METRICS_ROWS
+        );
+    }
+
+    /**
+     * Berechnet p50, p95 und max der Dauer je Quelle und Schritt. SQLite hat keine
+     * Perzentile, daher werden die nach Dauer sortierten Zeilen hier durchgegangen.
+     */
+    private Cursor metricsSummary(String selection, String[] selectionArgs) {
+        MatrixCursor result = new MatrixCursor(new String[]{
+                FeedContract.Metrics._ID,
+                FeedContract.Metrics.COLUMN_Source,
+                FeedContract.Metrics.COLUMN_Phase,
+                FeedContract.Metrics.COLUMN_Samples,
+                FeedContract.Metrics.COLUMN_P50,
+                FeedContract.Metrics.COLUMN_P95,
+                FeedContract.Metrics.COLUMN_Max
+        });
+        Cursor c = _database.getReadableDatabase().query(
+                FeedContract.Metrics.TABLE_NAME,
+                new String[]{
+                        FeedContract.Metrics.COLUMN_Source,
+                        FeedContract.Metrics.COLUMN_Phase,
+                        FeedContract.Metrics.COLUMN_Millis
+                },
+                selection, selectionArgs, null, null,
+                FeedContract.Metrics.COLUMN_Source + "," + FeedContract.Metrics.COLUMN_Phase + ","
+                        + FeedContract.Metrics.COLUMN_Millis
+        );
+        try {
+            ArrayList<Long> millis = new ArrayList<>();
+            int source = 0;
+            String phase = null;
+            long row = 0;
+            while (c.moveToNext()) {
+                if (phase != null && (c.getInt(0) != source || !c.getString(1).equals(phase))) {
+                    addSummary(result, ++row, source, phase, millis);
+                    millis.clear();
+                }
+                source = c.getInt(0);
+                phase = c.getString(1);
+                millis.add(c.getLong(2));
+            }
+            if (phase != null) addSummary(result, ++row, source, phase, millis);
+        } finally {
+            c.close();
+        }
+        result.setNotificationUri(getContext().getContentResolver(), METRICS_URI);
+        return result;
+    }
+
+    /**
+     * @param sorted die Dauer, aufsteigend sortiert
+     */
+    private static void addSummary(MatrixCursor result, long row, int source, String phase,
+                                   ArrayList<Long> sorted) {
+        result.addRow(new Object[]{
+                row, source, phase, sorted.size(),
+                percentile(sorted, 50), percentile(sorted, 95), sorted.get(sorted.size() - 1)
+        });
+    }
+
+    /**
+     * nearest rank Methode
+     */
+    private static long percentile(ArrayList<Long> sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    /**
+     * Meldet die Änderung sofort oder, innerhalb einer Transaktion, erst an deren Ende.
+     */
+    private void notifyChange(Uri uri) {
+        LinkedHashSet<Uri> pending = _pending.get();
+        if (pending != null) {
+            pending.add(uri);
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Ist CONTENT_URI dabei, reicht diese eine Meldung (sie erreicht auch alle Observer
+     * auf Quellen und Zeilen).
+     */
+    private void notifyAll(LinkedHashSet<Uri> uris) {
+        ContentResolver resolver = getContext().getContentResolver();
+        if (uris.contains(CONTENT_URI)) {
+            resolver.notifyChange(CONTENT_URI, null);
+            uris.remove(CONTENT_URI);
+            // metrics are not below CONTENT_URI
+            for (Uri uri : uris) {
+                if (!isFeedUri(uri)) resolver.notifyChange(uri, null);
+            }
+            return;
+        }
+        for (Uri uri : uris) resolver.notifyChange(uri, null);
+    }
+
+    private static boolean isFeedUri(Uri uri) {
+        return uri.getPathSegments().size() > 0 && BASE_PATH.equals(uri.getPathSegments().get(0));
+    }
+
+    private static int sourceOf(ContentValues values) {
+        Integer source = values.getAsInteger(FeedContract.Feeds.COLUMN_Source);
+        return source == null ? 0 : source;
+    }
+
+    /**
+     * @return die Quelle der Zeile id oder -1, wenn es sie nicht gibt
+     */
+    private static int sourceOf(SQLiteDatabase db, String id) {
+        Cursor c = db.query(
+                FeedContract.Feeds.TABLE_NAME, new String[]{FeedContract.Feeds.COLUMN_Source},
+                FeedContract.Feeds._ID + "=?", new String[]{id}, null, null, null
+        );
+        try {
+            return c.moveToFirst() ? c.getInt(0) : -1;
+        } finally {
+            c.close();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         int uriType = sURIMatcher.match(uri);
@@ -125,10 +674,12 @@ public class FeedContentProvider extends ContentProvider {
 
             case FEEDS:
                 rowsDeleted = sqlDB.delete(FeedContract.Feeds.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted > 0) notifyChange(CONTENT_URI);
                 break;
 
             case FEED_ID:
                 String id = uri.getLastPathSegment();
+                int source = sourceOf(sqlDB, id);
                 if (TextUtils.isEmpty(selection)) {
                     rowsDeleted = sqlDB.delete(
                             FeedContract.Feeds.TABLE_NAME,
@@ -142,12 +693,12 @@ public class FeedContentProvider extends ContentProvider {
                             selectionArgs
                     );
                 }
+                if (rowsDeleted > 0) notifyChange(rowUri(source, Long.parseLong(id)));
                 break;
 
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return rowsDeleted;
     }
 
@@ -165,10 +716,12 @@ public class FeedContentProvider extends ContentProvider {
                         selection,
                         selectionArgs
                 );
+                if (rowsUpdated > 0) notifyChange(CONTENT_URI);
                 break;
 
             case FEED_ID:
                 String id = uri.getLastPathSegment();
+                int source = sourceOf(sqlDB, id);
                 if (TextUtils.isEmpty(selection)) {
                     rowsUpdated = sqlDB.update(
                             FeedContract.Feeds.TABLE_NAME,
@@ -184,12 +737,12 @@ public class FeedContentProvider extends ContentProvider {
                             selectionArgs
                     );
                 }
+                if (rowsUpdated > 0) notifyChange(rowUri(source, Long.parseLong(id)));
                 break;
 
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return rowsUpdated;
     }
 }
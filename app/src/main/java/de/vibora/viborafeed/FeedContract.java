@@ -1,30 +1,23 @@
 package de.vibora.viborafeed;
 
 import android.app.AlarmManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.BitmapShader;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.RectF;
-import android.graphics.Shader;
+import android.content.Context;
 import android.os.Build;
 import android.provider.BaseColumns;
 import android.text.Html;
 import android.text.Spanned;
 import android.util.Log;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 
 
@@ -34,7 +27,7 @@ import java.util.Locale;
  * in bzw aus der Datenbank zu bekommen.
  *
  * @see FeedContentProvider
- * @see FeedCursorAdapter
+ * @see FeedAdapter
  * @see FeedHelper
  */
 public class FeedContract {
@@ -49,10 +42,77 @@ public class FeedContract {
         public static final String COLUMN_Date = "feed_date";
         public static final String COLUMN_Link = "feed_link";
         public static final String COLUMN_Body = "feed_body";
+        /**
+         * früher das Bild als BLOB, seit DB Version 6 immer NULL. Siehe {@link #COLUMN_ImageKey}
+         */
         public static final String COLUMN_Image = "feed_image";
         public static final String COLUMN_Source = "feed_source";
         public static final String COLUMN_Deleted = "feed_deleted";
         public static final String COLUMN_Flag = "feed_isnew";
+
+        /**
+         * stabiler Schlüssel eines Items (guid oder Hash des Links), siehe {@link FeedDedup}
+         */
+        public static final String COLUMN_Key = "feed_key";
+
+        /**
+         * Schlüssel des Bildes im {@link ImageStore} oder NULL
+         */
+        public static final String COLUMN_ImageKey = "feed_image_key";
+
+        /**
+         * der Body als reiner Text (ohne html), wird beim Einfügen berechnet
+         */
+        public static final String COLUMN_Text = "feed_text";
+
+        /**
+         * der Anfang von {@link #COLUMN_Text} für Liste und Benachrichtigung,
+         * siehe {@link FeedContract#preview(String)}
+         */
+        public static final String COLUMN_Preview = "feed_preview";
+    }
+
+    /**
+     * FTS4 Tabelle über Titel und Text der Feeds. Sie hat keinen eigenen Inhalt
+     * (content=feeds) und wird über Trigger aktuell gehalten.
+     */
+    public static class Search {
+        public static final String TABLE_NAME = "feeds_fts";
+
+        /**
+         * kurzer Textausschnitt um den Treffer herum, nur bei der Suche vorhanden
+         */
+        public static final String COLUMN_Snippet = "feed_snippet";
+    }
+
+    /**
+     * Zeiten der einzelnen Schritte eines Refresh, siehe {@link RefreshMetrics}.
+     * Es werden nur die letzten {@link ViboraApp.Config#MAX_METRICS_ROWS} Zeilen behalten.
+     */
+    public static class Metrics implements BaseColumns {
+        public static final String TABLE_NAME = "metrics";
+
+        /**
+         * Start des Refresh in ms seit 1970
+         */
+        public static final String COLUMN_Time = "metric_time";
+        /**
+         * id der Quelle oder 0 für Schritte, die alle Quellen betreffen
+         */
+        public static final String COLUMN_Source = "metric_source";
+        public static final String COLUMN_Phase = "metric_phase";
+        public static final String COLUMN_Millis = "metric_millis";
+        public static final String COLUMN_Bytes = "metric_bytes";
+        /**
+         * Anzahl der Items, Bilder o.ä., die der Schritt verarbeitet hat
+         */
+        public static final String COLUMN_Count = "metric_count";
+
+        // columns of the summary, see FeedContentProvider#METRICS_SUMMARY_URI
+        public static final String COLUMN_Samples = "samples";
+        public static final String COLUMN_P50 = "p50";
+        public static final String COLUMN_P95 = "p95";
+        public static final String COLUMN_Max = "max";
     }
 
     public static class Flag {
@@ -72,24 +132,43 @@ public class FeedContract {
     private static final String COMMA_SEP = ",";
 
     public final static long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private final static long MILLIS_PER_MINUTE = 60 * 1000L;
 
     /**
      * Die Datenbank will für DATETIME dieses Format {@value #DATABASE_DATETIME_FORMAT}
      */
-    public static final String DATABASE_DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    public static final String DATABASE_DATETIME_FORMAT = FeedDate.DB_PATTERN;
+
+    /**
+     * Das DEFAULT_SORTORDER sollte nach Datum absteigend sortiert sein.
+     */
+    public static final String DEFAULT_SORTORDER = Feeds.COLUMN_Date +" DESC";
 
     /**
-     * Das ist das Format, was von Feeds als String im pubDate TAG erwartet wird.
-     * Bei Abweichungen von {@value #FEEDRAW_DATETIME_FORMAT} wird das aktuelle Datum für neue Feeds genommen.
+     * Wie DEFAULT_SORTORDER, aber eindeutig: bei gleichem Datum entscheidet die _ID.
+     * Die Indexe enthalten die _ID (rowid) implizit, daher reicht dafür der Index.
      *
-     * @see FeedContract#rawToDate(String)
+     * @see FeedPageLoader
      */
-    public static final String FEEDRAW_DATETIME_FORMAT = "EEE, d MMM yyyy HH:mm:ss Z";
+    public static final String PAGE_SORTORDER =
+            Feeds.COLUMN_Date + " DESC" + COMMA_SEP + Feeds._ID + " DESC";
 
     /**
-     * Das DEFAULT_SORTORDER sollte nach Datum absteigend sortiert sein.
+     * Für die Feeds ab einem Schlüssel (Datum, _ID) inkl., bei PAGE_SORTORDER.
+     * Das erste feed_date &lt;= ? begrenzt den Bereich im Index.
      */
-    public static final String DEFAULT_SORTORDER = Feeds.COLUMN_Date +" DESC";
+    public static final String SELECTION_FROM_KEY =
+            Feeds.COLUMN_Date + "<=? AND (" + Feeds.COLUMN_Date + "<? OR " + Feeds._ID + "<=?)";
+
+    /**
+     * Für die Feeds vor einem Schlüssel (Datum, _ID), aufsteigend sortiert mit
+     * {@link #PAGE_SORTORDER_REVERSE}.
+     */
+    public static final String SELECTION_BEFORE_KEY =
+            Feeds.COLUMN_Date + ">=? AND (" + Feeds.COLUMN_Date + ">? OR " + Feeds._ID + ">?)";
+
+    public static final String PAGE_SORTORDER_REVERSE =
+            Feeds.COLUMN_Date + " ASC" + COMMA_SEP + Feeds._ID + " ASC";
 
     public static final String DEFAULT_SELECTION =
             Feeds.COLUMN_Deleted +"=? AND " + Feeds.COLUMN_Source + "=?";
@@ -111,30 +190,178 @@ public class FeedContract {
                     Feeds.COLUMN_Image + IMAGE_TYPE + COMMA_SEP +
                     Feeds.COLUMN_Source + INTEGER_TYPE + COMMA_SEP +
                     Feeds.COLUMN_Deleted + INTEGER_TYPE + COMMA_SEP +
-                    Feeds.COLUMN_Flag + INTEGER_TYPE + " )";
+                    Feeds.COLUMN_Flag + INTEGER_TYPE + COMMA_SEP +
+                    Feeds.COLUMN_Key + TEXT_TYPE + COMMA_SEP +
+                    Feeds.COLUMN_ImageKey + TEXT_TYPE + COMMA_SEP +
+                    Feeds.COLUMN_Text + TEXT_TYPE + COMMA_SEP +
+                    Feeds.COLUMN_Preview + TEXT_TYPE + " )";
+
+    public static final String SQL_CREATE_KEY_INDEX =
+            "CREATE UNIQUE INDEX feeds_key ON " + Feeds.TABLE_NAME +
+                    " (" + Feeds.COLUMN_Key + ")";
+
+    /**
+     * Indexe passend zu DEFAULT_SELECTION bzw. DEFAULT_SELECTION_ADD (jeweils mit
+     * DEFAULT_SORTORDER) sowie für das Aufräumen nach Datum.
+     */
+    public static final String[] SQL_CREATE_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS feeds_deleted_source_date ON " + Feeds.TABLE_NAME + " (" +
+                    Feeds.COLUMN_Deleted + COMMA_SEP +
+                    Feeds.COLUMN_Source + COMMA_SEP +
+                    Feeds.COLUMN_Date + ")",
+            "CREATE INDEX IF NOT EXISTS feeds_deleted_date ON " + Feeds.TABLE_NAME + " (" +
+                    Feeds.COLUMN_Deleted + COMMA_SEP +
+                    Feeds.COLUMN_Date + ")",
+            "CREATE INDEX IF NOT EXISTS feeds_date ON " + Feeds.TABLE_NAME + " (" +
+                    Feeds.COLUMN_Date + ")"
+    };
+
+    public static final String SQL_CREATE_SEARCH =
+            "CREATE VIRTUAL TABLE " + Search.TABLE_NAME + " USING fts4(" +
+                    "content=\"" + Feeds.TABLE_NAME + "\"" + COMMA_SEP +
+                    Feeds.COLUMN_Title + COMMA_SEP +
+                    Feeds.COLUMN_Text + ")";
+
+    /**
+     * Trigger für {@link #SQL_CREATE_SEARCH}. Da die FTS Tabelle den Inhalt aus feeds liest,
+     * muss vor dem Ändern/Löschen einer Zeile gelöscht und danach eingefügt werden.
+     * Andere Spalten als Titel und Text (z.B. Flags) lösen nichts aus.
+     */
+    public static final String[] SQL_CREATE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER feeds_fts_bu BEFORE UPDATE OF " +
+                    Feeds.COLUMN_Title + COMMA_SEP + Feeds.COLUMN_Text +
+                    " ON " + Feeds.TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + Search.TABLE_NAME + " WHERE docid=old." + Feeds._ID + "; END",
+            "CREATE TRIGGER feeds_fts_bd BEFORE DELETE ON " + Feeds.TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + Search.TABLE_NAME + " WHERE docid=old." + Feeds._ID + "; END",
+            "CREATE TRIGGER feeds_fts_au AFTER UPDATE OF " +
+                    Feeds.COLUMN_Title + COMMA_SEP + Feeds.COLUMN_Text +
+                    " ON " + Feeds.TABLE_NAME + " BEGIN " +
+                    "INSERT INTO " + Search.TABLE_NAME + "(docid" + COMMA_SEP +
+                    Feeds.COLUMN_Title + COMMA_SEP + Feeds.COLUMN_Text + ") VALUES(new." +
+                    Feeds._ID + ", new." + Feeds.COLUMN_Title + ", new." + Feeds.COLUMN_Text + "); END",
+            "CREATE TRIGGER feeds_fts_ai AFTER INSERT ON " + Feeds.TABLE_NAME + " BEGIN " +
+                    "INSERT INTO " + Search.TABLE_NAME + "(docid" + COMMA_SEP +
+                    Feeds.COLUMN_Title + COMMA_SEP + Feeds.COLUMN_Text + ") VALUES(new." +
+                    Feeds._ID + ", new." + Feeds.COLUMN_Title + ", new." + Feeds.COLUMN_Text + "); END"
+    };
+
+    public static final String SQL_CREATE_METRICS =
+            "CREATE TABLE " + Metrics.TABLE_NAME + " (" +
+                    Metrics._ID + INTEGER_TYPE + " PRIMARY KEY" + COMMA_SEP +
+                    Metrics.COLUMN_Time + INTEGER_TYPE + COMMA_SEP +
+                    Metrics.COLUMN_Source + INTEGER_TYPE + COMMA_SEP +
+                    Metrics.COLUMN_Phase + TEXT_TYPE + COMMA_SEP +
+                    Metrics.COLUMN_Millis + INTEGER_TYPE + COMMA_SEP +
+                    Metrics.COLUMN_Bytes + INTEGER_TYPE + COMMA_SEP +
+                    Metrics.COLUMN_Count + INTEGER_TYPE + " )";
 
     public static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + Feeds.TABLE_NAME;
 
+    /**
+     * max Länge von {@link Feeds#COLUMN_Preview}
+     */
+    public static final int PREVIEW_LENGTH = 300;
+
+    /**
+     * Die Liste braucht den html Body nicht, nur die Vorschau.
+     */
     public static final String[] projection = {
             Feeds._ID,
             Feeds.COLUMN_Title,
             Feeds.COLUMN_Date,
             Feeds.COLUMN_Link,
-            Feeds.COLUMN_Body,
-            Feeds.COLUMN_Image,
+            Feeds.COLUMN_Preview,
+            Feeds.COLUMN_ImageKey,
             Feeds.COLUMN_Source,
             Feeds.COLUMN_Deleted,
             Feeds.COLUMN_Flag
     };
 
+    public static final String[] searchProjection = {
+            Feeds._ID,
+            Feeds.COLUMN_Title,
+            Feeds.COLUMN_Date,
+            Feeds.COLUMN_Link,
+            Feeds.COLUMN_Preview,
+            Feeds.COLUMN_ImageKey,
+            Feeds.COLUMN_Source,
+            Feeds.COLUMN_Deleted,
+            Feeds.COLUMN_Flag,
+            Search.COLUMN_Snippet
+    };
+
+    /**
+     * Für {@link FeedContentProvider#SEARCH_URI}: Treffer in der FTS Tabelle, die nicht
+     * gelöscht sind.
+     */
     public static final String SELECTION_SEARCH =
-            Feeds.COLUMN_Deleted +"=? AND (" +
-                    Feeds.COLUMN_Title + " LIKE ? OR " +
-                    Feeds.COLUMN_Body + " LIKE ?)";
+            Search.TABLE_NAME + " MATCH ? AND " +
+                    Feeds.TABLE_NAME + "." + Feeds.COLUMN_Deleted + "=?";
+
+    /**
+     * offsets() liefert je Treffer vier durch Leerzeichen getrennte Zahlen (Spalte, Wort,
+     * Byte-Offset, Größe). Die Anzahl der Leerzeichen + 1 durch 4 ist also die Anzahl der
+     * Treffer, unabhängig davon, wo sie im Text stehen.
+     */
+    private static final String SEARCH_HITS =
+            "(length(offsets(" + Search.TABLE_NAME + ")) - length(replace(offsets("
+                    + Search.TABLE_NAME + "), ' ', '')) + 1) / 4";
+
+    /**
+     * Rangfolge der Suche: die Anzahl der Treffer (FTS4 hat kein eigenes rank), danach
+     * das Datum.
+     */
+    public static final String SEARCH_SORTORDER =
+            SEARCH_HITS + " DESC, " +
+                    Feeds.TABLE_NAME + "." + Feeds.COLUMN_Date + " DESC";
 
     public static String[] searchArgs(String query) {
-        return new String[]{Integer.toString(Flag.VISIBLE), "%"+query+"%", "%"+query+"%"};
+        return new String[]{matchQuery(query), Integer.toString(Flag.VISIBLE)};
+    }
+
+    /**
+     * Macht aus der Eingabe des Users einen FTS Ausdruck: jedes Wort wird als Präfix
+     * gesucht (<tt>wort*</tt>), alle Wörter müssen vorkommen. Zeichen, die in FTS eine
+     * Bedeutung haben (Anführungszeichen, Klammern, - ...), trennen wie alle anderen
+     * Zeichen außer Buchstaben und Ziffern die Wörter, siehe {@link #searchTerms(String)}.
+     *
+     * @param query die Eingabe
+     * @return der Ausdruck für MATCH
+     */
+    public static String matchQuery(String query) {
+        StringBuilder sb = new StringBuilder();
+        for (String term : searchTerms(query)) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(term).append('*');
+        }
+        // nothing left: a phrase that never matches
+        if (sb.length() == 0) return "\"\"";
+        return sb.toString();
+    }
+
+    /**
+     * Zerlegt die Eingabe des Users in die Wörter, nach denen {@link #matchQuery(String)}
+     * sucht. Wie der simple Tokenizer von FTS4 trennt jedes Zeichen, das kein Buchstabe
+     * und keine Ziffer ist: aus "e-mail" werden "e" und "mail".
+     *
+     * @param query die Eingabe
+     * @return die Wörter, evtl. leer
+     */
+    public static List<String> searchTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean inWord = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                terms.add(query.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
     }
 
     /**
@@ -144,8 +371,7 @@ public class FeedContract {
      * @return the string
      */
     public static String dbFriendlyDate(Date date) {
-        SimpleDateFormat formatOut = new SimpleDateFormat(DATABASE_DATETIME_FORMAT, Locale.ENGLISH);
-        return formatOut.format(date);
+        return FeedDate.toDb(date.getTime());
     }
 
     /**
@@ -166,212 +392,85 @@ public class FeedContract {
     }
 
     /**
-     * Ein Wrapper für gleichnamige andere Methode, um nicht immer <b>true</b> eingeben zu müssen.
+     * Kürzt den reinen Text auf {@link #PREVIEW_LENGTH} Zeichen, möglichst an einer Wortgrenze.
      *
-     * @param html String with html code
-     * @return result without html code
+     * @param text Text ohne html
+     * @return die Vorschau
      */
-    public static String removeHtml(String html) {
-        FeedContract fc = new FeedContract();
-        return fc.removeHtml(html, true);
+    public static String preview(String text) {
+        if (text == null) return "";
+        if (text.length() <= PREVIEW_LENGTH) return text;
+        int end = text.lastIndexOf(' ', PREVIEW_LENGTH);
+        if (end < PREVIEW_LENGTH / 2) end = PREVIEW_LENGTH;
+        return text.substring(0, end).trim() + " \u2026";
     }
 
     /**
-     * Entfernt html code in einem String.
-     * wenn ignoreEntities <b>true</b>, dann wird zusätzlich versucht, HTML-Entities auf zu
-     * lösen und zu reinem Text zu konvertieren.
+     * Entfernt html code in einem String und löst HTML-Entities auf.
+     * Alles ab {@link ViboraApp.Config#DEFAULT_lastRssWord} wird abgeschnitten, es werden
+     * max {@link ViboraApp.Config#MAX_TEXT_LENGTH} Zeichen gelesen.
      *
-     * @param html           string mit html code
-     * @param ignoreEntities if true: method uses <tt>Html.fromHtml()</tt> to remove HTML-Entities
+     * @param html String with html code
      * @return result without html code
+     * @see HtmlText#toText(String, String, int)
      */
-    public String removeHtml(String html, boolean ignoreEntities) {
-        // get only "xxxxxxxxxx ..." without "weiterlesen" link
-        int tail = html.indexOf(ViboraApp.Config.DEFAULT_lastRssWord);
-        if (tail > 0) html = html.substring(0, tail);
-
-        html = html.replaceAll("<(.*?)\\>"," ");
-        html = html.replaceAll("<(.*?)\\\n"," ");
-        html = html.replaceFirst("(.*?)\\>", " ");
-        html = html.replaceAll("&nbsp;"," ");
-
-        if (ignoreEntities) {
-            // handle some html entities
-            html = fromHtml(html).toString();
-        }
-        return html.trim();
-    }
-
-    /**
-     * Macht aus dem Datums-String eines Feeds ein <b>Date</b>-Objekt.
-     *
-     * @param feedRaw String mit dem Datum, so wie er im <b>pubDate</b> Tag gefunden wurde.
-     * @return Datum passend zum String oder (bei Fehler) das jetzige Datum
-     */
-    public static Date rawToDate(String feedRaw) {
-        SimpleDateFormat formatIn = new SimpleDateFormat(
-                FEEDRAW_DATETIME_FORMAT, Locale.ENGLISH
+    public static String removeHtml(String html) {
+        return HtmlText.toText(
+                html, ViboraApp.Config.DEFAULT_lastRssWord, ViboraApp.Config.MAX_TEXT_LENGTH
         );
-        try {
-            if (feedRaw == null) {
-                Log.d(ViboraApp.TAG, "Feed Date is null! use date from now.");
-                return new Date();
-            }
-            return formatIn.parse(feedRaw);
-        } catch (ParseException e) {
-            Log.d(ViboraApp.TAG, feedRaw + ": Feed Date parse error! use date from now.");
-            return new Date();
-        }
     }
 
+    private static final HashMap<String, String> _dateCache = new HashMap<>();
+    private static long _dateCacheMinute = -1;
+    private static SimpleDateFormat _timeFormat;
+    private static SimpleDateFormat _dayFormat;
+
     /**
      * Reformatiert das Datum eines Feeds aus der Datenbank, so
-     * dass es in einem View genutzt werden kann.
+     * dass es in einem View genutzt werden kann: die Uhrzeit, wenn es weniger als
+     * einen Tag her ist, sonst der Tag. Da sich das nur mit der Zeit ändert, werden
+     * die Texte bis zur nächsten Minute gemerkt.
      *
      * @param dbDate Ein Datumsstring, so wie ihn die Datenbank liefert
      * @return Ein String, so wie man ihn in einen View als Datum nutzen kann
      */
-    public static String getDate(String dbDate) {
-        Date date = null;
-        SimpleDateFormat formatIn = new SimpleDateFormat(
-                DATABASE_DATETIME_FORMAT, Locale.ENGLISH
-        );
-        try {
-            date = formatIn.parse(dbDate);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-        return getDate(date);
-    }
-
-    /**
-     * Aus einem Datum wird ein String zur Darstellung im View erzeugt.
-     *
-     * @param date Datum
-     * @return Das Datum in sprachabhängigem Format für den Feed
-     */
-    public static String getDate(Date date) {
-
-        boolean moreThanDay = Math.abs(date.getTime() - new Date().getTime()) > MILLIS_PER_DAY;
-        SimpleDateFormat formatOut;
-
-        if (moreThanDay) {
-            formatOut = new SimpleDateFormat(
-                    ViboraApp.getContextOfApplication().getString(R.string.dateForm2), Locale.ENGLISH
-            );
-        } else {
-            formatOut = new SimpleDateFormat(
+    public static synchronized String getDate(String dbDate) {
+        long now = System.currentTimeMillis();
+        long minute = now / MILLIS_PER_MINUTE;
+        if (minute != _dateCacheMinute) {
+            _dateCache.clear();
+            _dateCacheMinute = minute;
+            // the patterns are resources: they may change with the language
+            _timeFormat = new SimpleDateFormat(
                     ViboraApp.getContextOfApplication().getString(R.string.dateForm), Locale.ENGLISH
             );
-
-        }
-        return formatOut.format(date);
-    }
-
-    /**
-     * Extrahiert aus einem Node bestimmte Daten, die zu einem TAG gehören.
-     *
-     * @param n   das Item des Feed-Documents, aus dem Daten entnommen werden sollen
-     * @param tag der Tag
-     * @return gewünschter Inhalt des Tags
-     */
-    static public String extract(Node n, String tag) {
-        Element e = null;
-        Element ee = null;
-        NodeList nl = null;
-        e = (Element) n;
-        nl = e.getElementsByTagName(tag);
-        if (nl == null) return null;
-        ee = (Element) nl.item(0);
-        if (ee == null) return null;
-        if (tag == "enclosure" || tag == "media:thumbnail" ) {
-            return ee.getAttributes().getNamedItem("url").getNodeValue();
-        } else {
-            nl = ee.getChildNodes();
-            if (nl == null) return null;
-            Node n2 = (Node) nl.item(0);
-            if (n2 == null) return null;
-            return n2.getNodeValue();
+            _dayFormat = new SimpleDateFormat(
+                    ViboraApp.getContextOfApplication().getString(R.string.dateForm2), Locale.ENGLISH
+            );
         }
-    }
-
-    /**
-     * Erzeugt aus einem Bitmap ein Byte Array, so dass es in die Datenbank gespeichert werden kann.
-     *
-     * @param bitmap Das Bild
-     * @return Bild als Byte Array, um es in der DB als BLOB zu speichern
-     */
-    public static byte[] getBytes(Bitmap bitmap) {
-        if (bitmap == null) return null;
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 0, stream);
-        return stream.toByteArray();
-    }
-
-    /**
-     * Macht aus dem Daten in der DB ein Bild
-     *
-     * @param image Bild als Datenbank-Byte Array (BLOB)
-     * @return Bild als Bitmap
-     */
-    public static Bitmap getImage(byte[] image) {
-        if (image == null) return null;
-        return BitmapFactory.decodeByteArray(image, 0, image.length);
-    }
-
-    /**
-     * Skaliert ein Bitmap auf gewünschte Breite. Das Seitenverhältnis bleibt erhalten.
-     *
-     * @param b     input
-     * @param width gewünschte Breite
-     * @return output
-     */
-    public static Bitmap scale(Bitmap b, int width) {
-        float ration = (float) b.getHeight() / b.getWidth();
-        int newHeight = (int) (ration * width);
-        byte[] imageAsBytes = FeedContract.getBytes(b);
-        Bitmap bo = BitmapFactory.decodeByteArray(imageAsBytes, 0, imageAsBytes.length);
-        b = Bitmap.createScaledBitmap(bo, width, newHeight, false);
-
-        Bitmap output = Bitmap.createBitmap(
-                b.getWidth(),
-                b.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-        Canvas canvas = new Canvas(output);
-
-        BitmapShader shader;
-        RectF rect;
-        shader = new BitmapShader(b, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        paint.setShader(shader);
-        rect = new RectF(0.0f, 0.0f, b.getWidth(), b.getHeight());
-        canvas.drawRoundRect(rect, ViboraApp.Config.IMG_ROUND, ViboraApp.Config.IMG_ROUND, paint);
-
-        return output;
+        String text = _dateCache.get(dbDate);
+        if (text != null) return text;
+
+        long millis = FeedDate.fromDb(dbDate);
+        if (millis == FeedDate.INVALID) millis = now;
+        boolean moreThanDay = Math.abs(millis - now) > MILLIS_PER_DAY;
+        text = (moreThanDay ? _dayFormat : _timeFormat).format(new Date(millis));
+        _dateCache.put(dbDate, text);
+        return text;
     }
 
     /**
      * Mit unterschiedlichen Möglichkeiten wird versucht, eine Bild-Url zu finden.
-     * Das gefundene Bild wird dann heruntergeladen und auf die
-     * Breite MAX_IMG_WIDTH {@link de.vibora.viborafeed.ViboraApp.Config}
-     * skaliert.
      *
-     * @param n der Item Knoten des Documents
-     * @return das Bild oder null
+     * @param item das Item aus dem {@link FeedParser}
+     * @return die Url des Bildes oder null
      */
-    public static Bitmap getImage(Node n) {
+    public static String getImageUrl(FeedItem item) {
         // img+src tag from <body>, <content:encoded>, or url attribute from <enclosure> or <media:thumbnail>
-        Bitmap result = null;
-        InputStream is = null;
-        String path = null;
-
-        String e = extract(n, "enclosure");
-        String t = extract(n, "media:thumbnail");
-        String c = extract(n, "content:encoded");
-        String b = extract(n, "description");
-        boolean well = false;
+        String e = item.enclosure;
+        String t = item.thumbnail;
+        String c = item.content;
+        String b = item.description;
 
         if (b != null && b.contains("<img ")) {
             int start = b.indexOf(" src=\"");
@@ -382,11 +481,10 @@ public class FeedContract {
                 b = b.substring(start + 6, stopp + 5);
                 b = b.replace("\"","");
                 Log.d(ViboraApp.TAG, "description  " + b);
-                well = true;
-                path = b;
+                return b;
             }
         }
-        if (well == false && c != null && c.contains("<img ")) {
+        if (c != null && c.contains("<img ")) {
             int start = c.indexOf(" src=\"");
             int stopp = c.indexOf(".jpg\" ");
             if (stopp < 0) stopp = c.indexOf(".JPG\" ");
@@ -395,32 +493,64 @@ public class FeedContract {
                 c = c.substring(start + 6, stopp + 5);
                 c = c.replace("\"","");
                 Log.d(ViboraApp.TAG, "content:encoded  " + c);
-                well = true;
-                path = c;
+                return c;
             }
         }
-        if (well == false && t != null) {
-            path = t;
+        if (t != null) {
             Log.d(ViboraApp.TAG, "media:thumbnail " + t);
-            well = true;
+            return t;
         }
-        if (well == false && e != null) {
-            path = e;
+        if (e != null) {
             Log.d(ViboraApp.TAG, "enclosure " + e);
-            well = true;
+            return e;
         }
+        return null;
+    }
 
-        if (well) {
-            try {
-                is = new URL(path).openStream();
-                result = BitmapFactory.decodeStream(is);
-                is.close();
-                result = FeedContract.scale(result, ViboraApp.Config.MAX_IMG_WIDTH);
-            } catch (IOException ex) {
-                ex.printStackTrace();
+    /**
+     * Das Bild wird heruntergeladen und mit dem {@link ImageTranscoder} auf die
+     * Breite MAX_IMG_WIDTH {@link de.vibora.viborafeed.ViboraApp.Config}
+     * skaliert. Die Verbindung kommt vom {@link HttpClient}, ein Bild, das schon einmal
+     * geholt wurde, kann also aus dessen Cache kommen. Connect- und Read-Timeout sind
+     * begrenzt, damit ein langsamer Host den {@link ThumbnailFetcher} nicht blockiert.
+     * Größer als MAX_IMAGE_BYTES darf das Bild nicht sein.
+     *
+     * @param ctx the context
+     * @param path die Url des Bildes
+     * @return das kodierte Vorschaubild für den {@link ImageStore} oder null
+     */
+    public static byte[] getImage(Context ctx, String path) {
+        InputStream is = null;
+        try {
+            HttpURLConnection conn = HttpClient.ME(ctx).open(
+                    new URL(path), ViboraApp.Config.IMAGE_READ_TIMEOUT_MS, true
+            );
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK
+                    || conn.getContentLength() > ViboraApp.Config.MAX_IMAGE_BYTES) {
+                HttpClient.release(conn);
+                return null;
+            }
+            is = conn.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                if (out.size() > ViboraApp.Config.MAX_IMAGE_BYTES) return null;
+                if (Thread.currentThread().isInterrupted()) return null;
+            }
+            return ImageTranscoder.thumbnail(out.toByteArray(), ViboraApp.Config.MAX_IMG_WIDTH);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         }
-
-        return result;
     }
 }
@@ -1,36 +1,295 @@
 package de.vibora.viborafeed;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.util.HashSet;
+
 /**
  * Diese Klasse stellt die Verbindung zur Datenbank her.
+ * <p>
+ * Upgrades laufen Schritt für Schritt über {@link #MIGRATIONS}, so dass Feeds und
+ * Favoriten erhalten bleiben. Nur Datenbanken älter als {@link #OLDEST_MIGRATABLE_VERSION}
+ * werden noch neu angelegt.
+ * </p>
  */
 public class FeedHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "feeds.db";
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 9;
+
+    /**
+     * Ab dieser Version gibt es Migrationen. Ältere Datenbanken werden gelöscht.
+     */
+    private static final int OLDEST_MIGRATABLE_VERSION = 3;
+
+    /**
+     * Ein Schritt von Version v auf v+1.
+     */
+    private interface Migration {
+        void migrate(Context ctx, SQLiteDatabase db);
+    }
+
+    /**
+     * MIGRATIONS[i] macht aus Version OLDEST_MIGRATABLE_VERSION + i die Version danach.
+     * Neue Schritte kommen nur hinten dazu, DATABASE_VERSION muss dann auch erhöht werden.
+     */
+    private static final Migration[] MIGRATIONS = {
+            // 3 -> 4: stable key for dedup
+            new Migration() {
+                @Override
+                public void migrate(Context ctx, SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + FeedContract.Feeds.TABLE_NAME
+                            + " ADD COLUMN " + FeedContract.Feeds.COLUMN_Key + " TEXT");
+                    fillKeys(db);
+                    db.execSQL(FeedContract.SQL_CREATE_KEY_INDEX);
+                }
+            },
+            // 4 -> 5: indexes for the list queries and the date based clean up
+            new Migration() {
+                @Override
+                public void migrate(Context ctx, SQLiteDatabase db) {
+                    for (String sql : FeedContract.SQL_CREATE_INDEXES) db.execSQL(sql);
+                }
+            },
+            // 5 -> 6: images from BLOBs to files in the ImageStore
+            new Migration() {
+                @Override
+                public void migrate(Context ctx, SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + FeedContract.Feeds.TABLE_NAME
+                            + " ADD COLUMN " + FeedContract.Feeds.COLUMN_ImageKey + " TEXT");
+                    moveImages(ctx, db);
+                }
+            },
+            // 6 -> 7: plain text column and the FTS4 search index
+            new Migration() {
+                @Override
+                public void migrate(Context ctx, SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + FeedContract.Feeds.TABLE_NAME
+                            + " ADD COLUMN " + FeedContract.Feeds.COLUMN_Text + " TEXT");
+                    fillText(db);
+                    createSearch(db);
+                    db.execSQL("INSERT INTO " + FeedContract.Search.TABLE_NAME + "("
+                            + FeedContract.Search.TABLE_NAME + ") VALUES('rebuild')");
+                }
+            },
+            // 7 -> 8: preview and plain titles
+            new Migration() {
+                @Override
+                public void migrate(Context ctx, SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + FeedContract.Feeds.TABLE_NAME
+                            + " ADD COLUMN " + FeedContract.Feeds.COLUMN_Preview + " TEXT");
+                    fillPreview(db);
+                }
+            },
+            // 8 -> 9: timings of the refreshs
+            new Migration() {
+                @Override
+                public void migrate(Context ctx, SQLiteDatabase db) {
+                    db.execSQL(FeedContract.SQL_CREATE_METRICS);
+                }
+            }
+    };
+
+    private final Context _ctx;
 
     public FeedHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * @param name eine andere Datei als feeds.db (für Tests)
+     */
+    FeedHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        _ctx = context;
+    }
+
+    /**
+     * Eine neue Datei bekommt auto_vacuum INCREMENTAL, bevor onCreate die Tabellen anlegt.
+     * Bei einer bestehenden Datei ändert das nichts, sie stellt erst die
+     * {@link DbMaintenance} mit einem vollen VACUUM um.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
         sqLiteDatabase.execSQL(FeedContract.SQL_CREATE_ENTRIES);
+        sqLiteDatabase.execSQL(FeedContract.SQL_CREATE_KEY_INDEX);
+        for (String sql : FeedContract.SQL_CREATE_INDEXES) sqLiteDatabase.execSQL(sql);
+        createSearch(sqLiteDatabase);
+        sqLiteDatabase.execSQL(FeedContract.SQL_CREATE_METRICS);
+    }
+
+    private static void createSearch(SQLiteDatabase db) {
+        db.execSQL(FeedContract.SQL_CREATE_SEARCH);
+        for (String sql : FeedContract.SQL_CREATE_SEARCH_TRIGGERS) db.execSQL(sql);
     }
 
+    /**
+     * Führt alle Migrationen von oldVersion bis newVersion aus. SQLiteOpenHelper macht
+     * das in einer Transaktion: schlägt ein Schritt fehl, bleibt die alte Version.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        Log.w(
-                FeedHelper.class.getName(),
-                "Upgrading database from version "
-                + oldVersion + " to " + newVersion
-                + ", which will destroy all old data"
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            Log.w(
+                    FeedHelper.class.getName(),
+                    "Upgrading database from version "
+                    + oldVersion + " to " + newVersion
+                    + ", which will destroy all old data"
+            );
+            sqLiteDatabase.execSQL(FeedContract.SQL_DELETE_ENTRIES);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        for (int v = oldVersion; v < newVersion; v++) {
+            Log.i(FeedHelper.class.getName(), "Migrating database from version " + v + " to " + (v + 1));
+            MIGRATIONS[v - OLDEST_MIGRATABLE_VERSION].migrate(_ctx, sqLiteDatabase);
+        }
+    }
+
+    /**
+     * Setzt COLUMN_Key für alte Zeilen (Hash des Links bzw. Titels, die guid ist dort
+     * nicht gespeichert). Doppelte Schlüssel bleiben NULL, sonst scheitert der UNIQUE Index.
+     * Items mit guid erkennt der {@link FeedDedup} auch an diesem Schlüssel wieder.
+     */
+    private static void fillKeys(SQLiteDatabase db) {
+        Cursor c = db.query(
+                FeedContract.Feeds.TABLE_NAME,
+                new String[]{
+                        FeedContract.Feeds._ID,
+                        FeedContract.Feeds.COLUMN_Link,
+                        FeedContract.Feeds.COLUMN_Title
+                },
+                null, null, null, null, null
+        );
+        HashSet<String> keys = new HashSet<>();
+        ContentValues values = new ContentValues();
+        try {
+            while (c.moveToNext()) {
+                FeedItem item = new FeedItem();
+                item.link = c.getString(1);
+                item.title = c.getString(2);
+                String key = FeedDedup.linkKey(item);
+                if (!keys.add(key)) continue;
+                values.put(FeedContract.Feeds.COLUMN_Key, key);
+                db.update(
+                        FeedContract.Feeds.TABLE_NAME,
+                        values,
+                        FeedContract.Feeds._ID + "=?",
+                        new String[]{Long.toString(c.getLong(0))}
+                );
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Setzt COLUMN_Text für alte Zeilen: der Body ohne HTML, so wie ihn auch der
+     * Refresher für neue Items schreibt.
+     */
+    private static void fillText(SQLiteDatabase db) {
+        Cursor c = db.query(
+                FeedContract.Feeds.TABLE_NAME,
+                new String[]{FeedContract.Feeds._ID, FeedContract.Feeds.COLUMN_Body},
+                null, null, null, null, null
+        );
+        ContentValues values = new ContentValues();
+        try {
+            while (c.moveToNext()) {
+                String body = c.getString(1);
+                values.put(FeedContract.Feeds.COLUMN_Text, body == null ? "" : FeedContract.removeHtml(body));
+                db.update(
+                        FeedContract.Feeds.TABLE_NAME,
+                        values,
+                        FeedContract.Feeds._ID + "=?",
+                        new String[]{Long.toString(c.getLong(0))}
+                );
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Setzt COLUMN_Preview für alte Zeilen und entfernt html aus den Titeln, so wie der
+     * Refresher es inzwischen beim Einfügen macht.
+     */
+    private static void fillPreview(SQLiteDatabase db) {
+        Cursor c = db.query(
+                FeedContract.Feeds.TABLE_NAME,
+                new String[]{
+                        FeedContract.Feeds._ID,
+                        FeedContract.Feeds.COLUMN_Title,
+                        FeedContract.Feeds.COLUMN_Text
+                },
+                null, null, null, null, null
+        );
+        ContentValues values = new ContentValues();
+        try {
+            while (c.moveToNext()) {
+                String title = c.getString(1);
+                values.put(FeedContract.Feeds.COLUMN_Title, title == null ? "" : FeedContract.removeHtml(title));
+                values.put(FeedContract.Feeds.COLUMN_Preview, FeedContract.preview(c.getString(2)));
+                db.update(
+                        FeedContract.Feeds.TABLE_NAME,
+                        values,
+                        FeedContract.Feeds._ID + "=?",
+                        new String[]{Long.toString(c.getLong(0))}
+                );
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Schreibt die BLOBs aus COLUMN_Image in den {@link ImageStore}. Die Url der alten
+     * Bilder ist unbekannt, daher ist hier der Hash der Bilddaten der Schlüssel.
+     * Die Zeilen werden einzeln gelesen, da ein CursorWindow nicht viele BLOBs fasst.
+     */
+    private static void moveImages(Context ctx, SQLiteDatabase db) {
+        ImageStore store = ImageStore.ME(ctx);
+        String table = FeedContract.Feeds.TABLE_NAME;
+        String image = FeedContract.Feeds.COLUMN_Image;
+        ContentValues values = new ContentValues();
+        Cursor ids = db.query(
+                table, new String[]{FeedContract.Feeds._ID}, image + " IS NOT NULL",
+                null, null, null, null
         );
-        sqLiteDatabase.execSQL(FeedContract.SQL_DELETE_ENTRIES);
-        onCreate(sqLiteDatabase);
+        try {
+            while (ids.moveToNext()) {
+                String[] id = {Long.toString(ids.getLong(0))};
+                Cursor c = db.query(
+                        table, new String[]{image}, FeedContract.Feeds._ID + "=?",
+                        id, null, null, null
+                );
+                try {
+                    if (!c.moveToFirst()) continue;
+                    byte[] bytes = c.getBlob(0);
+                    String key = ImageStore.keyOf(bytes);
+                    if (store.has(key) || store.put(key, bytes)) {
+                        values.put(FeedContract.Feeds.COLUMN_ImageKey, key);
+                        db.update(table, values, FeedContract.Feeds._ID + "=?", id);
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+        } finally {
+            ids.close();
+        }
+        values.clear();
+        values.putNull(image);
+        db.update(table, values, null, null);
     }
 }
@@ -1,42 +1,43 @@
 package de.vibora.viborafeed;
 
-import android.app.ListFragment;
+import android.app.Fragment;
 import android.app.LoaderManager;
 import android.content.ContentValues;
-import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.Toast;
 
 /**
- * Dieser "ListView" nutzt einen {@link FeedCursorAdapter} zur Darstellung der Feeds und
- * bezieht die Feeds über den CursorLoader, der {@link FeedContentProvider} nutzt.
+ * Diese Liste (RecyclerView) nutzt einen {@link FeedAdapter} zur Darstellung der Feeds und
+ * bezieht die Feeds über den {@link FeedPageLoader}, der {@link FeedContentProvider} nutzt.
  */
-public class FeedListFragment extends ListFragment implements LoaderManager.LoaderCallbacks<Cursor> {
-    private FeedCursorAdapter adapter;
+public class FeedListFragment extends Fragment implements LoaderManager.LoaderCallbacks<FeedSnapshot>,
+        FeedAdapter.Listener {
+    private FeedAdapter adapter;
+    private LinearLayoutManager layout;
+    private View emptyView;
 
-    @Override
-    public void onCreateContextMenu(ContextMenu menu, View v, ContextMenu.ContextMenuInfo menuInfo) {
-        super.onCreateContextMenu(menu, v, menuInfo);
-
-        AdapterView.AdapterContextMenuInfo info = (AdapterView.AdapterContextMenuInfo)menuInfo;
-        Cursor c = (Cursor) adapter.getItem(info.position);
+    /**
+     * die Zeile, deren Kontextmenü gerade offen ist
+     */
+    private FeedRow menuRow;
 
-        // first item!!
-        int flagVal = c.getInt(c.getColumnIndex(FeedContract.Feeds.COLUMN_Flag));
-        if (flagVal == FeedContract.Flag.FAVORITE) {
+    @Override
+    public void onCreateContextMenu(ContextMenu menu, FeedRow row) {
+        menuRow = row;
+        if (row.flag == FeedContract.Flag.FAVORITE) {
             menu.add(R.string.nofavorite);
         } else {
             menu.add(R.string.favorite);
@@ -47,158 +48,184 @@ public class FeedListFragment extends ListFragment implements LoaderManager.Load
 
     @Override
     public boolean onContextItemSelected(MenuItem item) {
-        new ContextTask().execute(item);
-        return super.onContextItemSelected(item);
+        if (menuRow == null) return super.onContextItemSelected(item);
+        FeedRow row = menuRow;
+        menuRow = null;
+        int flag = newFlag(item, row);
+        // only this row is bound again, the reload afterwards finds no difference
+        if (flag != row.flag && adapter.setFlag(row.id, flag)) {
+            FeedPageLoader loader = pager();
+            if (loader != null) loader.setDisplayed(adapter.getRows());
+        }
+        new ContextTask(row, flag).execute(item);
+        return true;
     }
 
     /**
-     * In dieser Methode wird ein Trick genutzt, um einen selbst definierten <b>emptyView</b> für
-     * die ListView zu nutzen. Andere Stellen zur Festlegung dieses Views sind nicht möglich.
-     *
-     * @param savedInstanceState
+     * @return das Flag, das die Zeile nach dem Menüpunkt hat
      */
+    private static int newFlag(MenuItem item, FeedRow row) {
+        switch (item.getItemId()) {
+            case R.id.action_readedFeed:
+                return row.flag == FeedContract.Flag.NEW ? FeedContract.Flag.READED : FeedContract.Flag.NEW;
+            case 0: // first item!!
+                return row.flag == FeedContract.Flag.FAVORITE ? FeedContract.Flag.NEW : FeedContract.Flag.FAVORITE;
+            default:
+                return row.flag;
+        }
+    }
+
     @Override
-    public void onActivityCreated(Bundle savedInstanceState) {
-        super.onActivityCreated(savedInstanceState);
-        registerForContextMenu(getListView());
-        View  emptyView = getActivity().getLayoutInflater().inflate(R.layout.empty_view, null);
-        ((ViewGroup)getListView().getParent()).addView(emptyView);
-        getListView().setEmptyView(emptyView);
-        getListView().setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                Cursor c = (Cursor) adapter.getItem(position);
-                String link = c.getString(c.getColumnIndex(FeedContract.Feeds.COLUMN_Link));
-                ((MainActivity) getActivity()).setWebView(link);
-            }
-        });
+    public void onClick(FeedRow row) {
+        ((MainActivity) getActivity()).setWebView(row.link);
+    }
+
+    private FeedPageLoader pager() {
+        return (FeedPageLoader) getLoaderManager().<FeedSnapshot>getLoader(0);
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View layout = inflater.inflate(R.layout.fragment_feedlist, container, false);
+        View root = inflater.inflate(R.layout.fragment_feedlist, container, false);
+        emptyView = root.findViewById(R.id.empty);
+        RecyclerView list = (RecyclerView) root.findViewById(R.id.list);
+        layout = new LinearLayoutManager(getActivity());
+        list.setLayoutManager(layout);
+        adapter = new FeedAdapter(getActivity(), this);
+        list.setAdapter(adapter);
+        list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                FeedPageLoader loader = pager();
+                int total = adapter.getItemCount();
+                if (loader == null || total == 0) return;
+                if (dy > 0 && layout.findLastVisibleItemPosition() >= total - ViboraApp.Config.PREFETCH_ROWS) {
+                    loader.nextPage();
+                } else if (dy < 0 && layout.findFirstVisibleItemPosition() <= ViboraApp.Config.PREFETCH_ROWS) {
+                    loader.previousPage();
+                }
+            }
+        });
         getLoaderManager().initLoader(0, null, this);
-        adapter = new FeedCursorAdapter(getActivity(), null, 0);
-        setListAdapter(adapter);
-        return layout;
+        return root;
     }
 
     /**
-     * Holt die Feeds für die LiestView aus der DB.
+     * Holt die Feeds für die Liste aus der DB.
      * Hier Wird DEFAULT_SELECTION von {@link FeedContract} genutzt sowie
      * weitere Konstanten, damit gelöschte Feeds nicht gezeigt und die
-     * Feeds nach Datum sortiert sind.
+     * Feeds nach Datum sortiert sind. Die Feeds werden seitenweise mit dem
+     * {@link FeedPageLoader} geladen, nur die Suche (nach Relevanz sortiert) lädt alle Treffer.
      *
      * @param LoaderId
      * @param bundle
      * @return
      */
     @Override
-    public Loader<Cursor> onCreateLoader(int LoaderId, Bundle bundle) {
+    public Loader<FeedSnapshot> onCreateLoader(int LoaderId, Bundle bundle) {
+        FeedPageLoader loader;
         if (!ViboraApp.query.equals("")) {
-            return new CursorLoader(
+            loader = FeedPageLoader.search(getActivity(), ViboraApp.query);
+        } else if (ViboraApp.showAdditionalFeed) {
+            loader = new FeedPageLoader(
                     getActivity(),
-                    FeedContentProvider.CONTENT_URI,
-                    FeedContract.projection,
-                    FeedContract.SELECTION_SEARCH,
-                    FeedContract.searchArgs(ViboraApp.query),
-                    FeedContract.DEFAULT_SORTORDER
-            );
-        }
-        if (ViboraApp.showAdditionalFeed) {
-            return new CursorLoader(
-                    getActivity(),
-                    FeedContentProvider.CONTENT_URI,
-                    FeedContract.projection,
                     FeedContract.DEFAULT_SELECTION_ADD,
                     FeedContract.DEFAULT_SELECTION_ARGS_ADD,
-                    FeedContract.DEFAULT_SORTORDER
+                    0
             );
         } else {
-            return new CursorLoader(
+            loader = new FeedPageLoader(
                     getActivity(),
-                    FeedContentProvider.CONTENT_URI,
-                    FeedContract.projection,
                     FeedContract.DEFAULT_SELECTION,
                     FeedContract.DEFAULT_SELECTION_ARGS,
-                    FeedContract.DEFAULT_SORTORDER
+                    ViboraApp.Source1.id
             );
         }
+        loader.setDisplayed(adapter.getRows());
+        return loader;
     }
 
+    /**
+     * Der neue Stand wurde schon im Hintergrund mit dem angezeigten verglichen, der
+     * Adapter bindet nur die geänderten Zeilen neu.
+     */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        adapter.swapCursor(data);
+    public void onLoadFinished(Loader<FeedSnapshot> loader, FeedSnapshot data) {
+        adapter.submit(data);
+        ((FeedPageLoader) loader).setDisplayed(adapter.getRows());
+        emptyView.setVisibility(adapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        adapter.swapCursor(null);
+    public void onLoaderReset(Loader<FeedSnapshot> loader) {
     }
 
 
     private class ContextTask extends AsyncTask<MenuItem, Void, String> {
+        private final FeedRow row;
+        private final int flag;
+
+        /**
+         * @param row die Zeile des Kontextmenüs
+         * @param flag das neue Flag der Zeile
+         */
+        ContextTask(FeedRow row, int flag) {
+            this.row = row;
+            this.flag = flag;
+        }
+
+        /**
+         * Die Liste hat nur die Vorschau, zum Teilen wird der ganze Text geholt.
+         */
+        private String readText(Uri uri) {
+            String text = "";
+            Cursor c = getActivity().getContentResolver().query(
+                    uri, new String[]{FeedContract.Feeds.COLUMN_Text}, null, null, null
+            );
+            if (c != null) {
+                if (c.moveToFirst() && c.getString(0) != null) text = c.getString(0);
+                c.close();
+            }
+            return text;
+        }
 
         @Override
         protected String doInBackground(MenuItem... params) {
             MenuItem item = params[0];
-            AdapterView.AdapterContextMenuInfo info = (AdapterView.AdapterContextMenuInfo) item.getMenuInfo();
-            long id = info.id;
-            Cursor c = (Cursor) adapter.getItem(info.position);
-            Uri uri = Uri.parse(FeedContentProvider.CONTENT_URI + "/" + id);
-            int flagVal = c.getInt(c.getColumnIndex(FeedContract.Feeds.COLUMN_Flag));
+            Uri uri = Uri.parse(FeedContentProvider.CONTENT_URI + "/" + row.id);
             ContentValues values = new ContentValues();
-            String link, title, body;
+            String body;
 
             switch (item.getItemId()) {
                 case R.id.action_openFeed:
-                    link = c.getString(c.getColumnIndex(FeedContract.Feeds.COLUMN_Link));
-                    Intent i = new Intent(Intent.ACTION_VIEW, Uri.parse(link));
+                    Intent i = new Intent(Intent.ACTION_VIEW, Uri.parse(row.link));
                     startActivity(i);
                     return null;
 
                 case R.id.action_readedFeed:
-
-                    if (flagVal == FeedContract.Flag.NEW) {
-                        values.put(FeedContract.Feeds.COLUMN_Flag, FeedContract.Flag.READED);
-                    } else {
-                        values.put(FeedContract.Feeds.COLUMN_Flag, FeedContract.Flag.NEW);
-                    }
+                case 0: // first item!!
+                    values.put(FeedContract.Feeds.COLUMN_Flag, flag);
                     getActivity().getContentResolver().update(uri, values, null, null);
                     return null;
 
                 case R.id.action_deleteFeed:
-                    title = c.getString(c.getColumnIndex(FeedContract.Feeds.COLUMN_Title));
                     values.put(FeedContract.Feeds.COLUMN_Deleted, FeedContract.Flag.DELETED);
                     getActivity().getContentResolver().update(uri, values, null, null);
-                    return title + "\n" + getString(R.string.deleted);
+                    return row.title + "\n" + getString(R.string.deleted);
 
                 case R.id.action_share:
-                    title = c.getString(c.getColumnIndex(FeedContract.Feeds.COLUMN_Title));
-                    body = c.getString(c.getColumnIndex(FeedContract.Feeds.COLUMN_Body));
-
-                    title = FeedContract.removeHtml(title);
-                    body = FeedContract.removeHtml(body);
-                    body = title.toUpperCase() +
+                    body = readText(uri);
+                    body = row.title.toUpperCase() +
                             "\n" + body + "\n" +
-                            c.getString(c.getColumnIndex(FeedContract.Feeds.COLUMN_Link));
+                            row.link;
 
                     Intent sharingIntent = new Intent(android.content.Intent.ACTION_SEND);
                     sharingIntent.setType("text/plain");
-                    sharingIntent.putExtra(android.content.Intent.EXTRA_SUBJECT, title);
+                    sharingIntent.putExtra(android.content.Intent.EXTRA_SUBJECT, row.title);
                     sharingIntent.putExtra(android.content.Intent.EXTRA_TEXT, body);
                     startActivity(Intent.createChooser(sharingIntent, getString(R.string.share)));
                     return null;
 
-                case 0: // first item!!
-                    if (flagVal == FeedContract.Flag.FAVORITE) {
-                        values.put(FeedContract.Feeds.COLUMN_Flag, FeedContract.Flag.NEW);
-                    } else {
-                        values.put(FeedContract.Feeds.COLUMN_Flag, FeedContract.Flag.FAVORITE);
-                    }
-                    getActivity().getContentResolver().update(uri, values, null, null);
-                    return null;
-
                 default:
                     return null;
             }
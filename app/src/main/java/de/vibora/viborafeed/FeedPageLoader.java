@@ -0,0 +1,338 @@
+package de.vibora.viborafeed;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lädt nicht alle Feeds, sondern ein Fenster aus max {@link ViboraApp.Config#MAX_PAGES}
+ * Seiten mit je {@link ViboraApp.Config#PAGE_SIZE} Zeilen. Die Seiten werden über den
+ * Schlüssel (Datum, _ID) gefunden (keyset statt OFFSET), daher ist eine Seite tief im
+ * Archiv so schnell wie die erste.
+ * <p>
+ * Mit {@link #nextPage()} wächst das Fenster nach unten, ist es voll, fällt oben eine
+ * Seite weg. Mit {@link #previousPage()} wandert es wieder nach oben.
+ * </p><p>
+ * Das Fenster wird mit einer Query gelesen, so passen nach einer Änderung in der DB
+ * (neuer Feed, Flag geändert) alle Seiten zusammen. Die Zeilen werden im Hintergrund
+ * gelesen und mit dem angezeigten Stand verglichen ({@link FeedSnapshot}).
+ * </p>
+ * <p>
+ * Der Loader hört nur auf die Änderungen seiner Quelle. Meldet der Provider einzelne Zeilen
+ * ({@link FeedContentProvider#rowUri(int, long)}), werden nur diese neu gelesen, sofern sie
+ * gerade angezeigt werden. Neue Zeilen und Änderungen vieler Zeilen laden das Fenster neu.
+ * </p>
+ * Die Suche ({@link #search(Context, String)}) ist nach Relevanz sortiert und lädt alle
+ * Treffer auf einmal, bei jeder Änderung neu.
+ */
+public class FeedPageLoader extends AsyncTaskLoader<FeedSnapshot> {
+    private final String _selection;
+    private final String[] _selectionArgs;
+    private final int _source;
+    private final boolean _search;
+
+    /**
+     * die _IDs der angezeigten Zeilen, die sich geändert haben
+     */
+    private final HashSet<Long> _dirty = new HashSet<>();
+    private volatile boolean _fullReload = true;
+
+    private final ContentObserver _observer = new ContentObserver(new Handler()) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long id = uri == null ? -1 : FeedContentProvider.rowIdOf(uri);
+            if (id >= 0 && !_search) {
+                // a row outside the window does not change what is shown
+                if (!isDisplayed(id)) return;
+                synchronized (_dirty) {
+                    _dirty.add(id);
+                }
+            } else {
+                _fullReload = true;
+            }
+            onContentChanged();
+        }
+    };
+
+    private FeedSnapshot _snapshot;
+    private boolean _observing = false;
+
+    /**
+     * der Stand, den die Liste gerade zeigt
+     */
+    private volatile List<FeedRow> _displayed = null;
+
+    /**
+     * erste Zeile des Fensters oder null, wenn es ganz oben beginnt
+     */
+    private volatile FeedRow _start = null;
+    /**
+     * erste Zeile der zweiten Seite im Fenster oder null
+     */
+    private volatile FeedRow _secondPage = null;
+    private volatile int _pages = 1;
+    private volatile boolean _hasMore = false;
+
+    /**
+     * 1 für die nächste Seite, -1 für die vorherige, 0 nur neu laden
+     */
+    private volatile int _move = 0;
+
+    /**
+     * @param context the context
+     * @param selection z.B. FeedContract.DEFAULT_SELECTION
+     * @param selectionArgs die Argumente dazu
+     * @param source die Quelle, die selection auswählt, oder 0 für alle
+     */
+    public FeedPageLoader(Context context, String selection, String[] selectionArgs, int source) {
+        this(context, selection, selectionArgs, source, false);
+    }
+
+    private FeedPageLoader(Context context, String selection, String[] selectionArgs,
+                           int source, boolean search) {
+        super(context);
+        _selection = selection;
+        _selectionArgs = selectionArgs;
+        _source = source;
+        _search = search;
+    }
+
+    /**
+     * @param context the context
+     * @param query die Eingabe des Users
+     * @return ein Loader für alle Treffer der Volltextsuche
+     */
+    public static FeedPageLoader search(Context context, String query) {
+        return new FeedPageLoader(
+                context, FeedContract.SELECTION_SEARCH, FeedContract.searchArgs(query), 0, true
+        );
+    }
+
+    /**
+     * Der Stand, gegen den der nächste Stand verglichen wird. Muss nach jeder Änderung
+     * der Liste (auch ohne Loader) gesetzt werden.
+     *
+     * @param rows die angezeigten Zeilen
+     */
+    public void setDisplayed(List<FeedRow> rows) {
+        _displayed = rows;
+    }
+
+    private boolean isDisplayed(long id) {
+        List<FeedRow> rows = _displayed;
+        if (rows == null) return false;
+        for (FeedRow row : rows) {
+            if (row.id == id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lädt die nächste Seite, wenn es eine gibt.
+     *
+     * @return false, wenn es keine weitere Seite gibt oder gerade geladen wird
+     */
+    public boolean nextPage() {
+        if (!_hasMore || _move != 0) return false;
+        _move = 1;
+        onContentChanged();
+        return true;
+    }
+
+    /**
+     * Lädt die Seite vor dem Fenster, wenn das Fenster nicht schon oben beginnt.
+     *
+     * @return false, wenn das Fenster schon oben beginnt oder gerade geladen wird
+     */
+    public boolean previousPage() {
+        if (_start == null || _move != 0) return false;
+        _move = -1;
+        onContentChanged();
+        return true;
+    }
+
+    @Override
+    public FeedSnapshot loadInBackground() {
+        List<FeedRow> base = _displayed;
+        HashSet<Long> dirty;
+        synchronized (_dirty) {
+            dirty = new HashSet<>(_dirty);
+            _dirty.clear();
+        }
+        boolean full = _fullReload || _move != 0 || base == null;
+        _fullReload = false;
+        if (!full && !dirty.isEmpty()) {
+            return FeedSnapshot.diff(base, reloadRows(base, dirty));
+        }
+
+        if (_search) {
+            List<FeedRow> rows = query(
+                    FeedContentProvider.SEARCH_URI, FeedContract.searchProjection,
+                    _selection, _selectionArgs, FeedContract.SEARCH_SORTORDER
+            );
+            return FeedSnapshot.diff(base, rows);
+        }
+
+        int move = _move;
+        FeedRow start = _start;
+        int pages = _pages;
+        int pageSize = ViboraApp.Config.PAGE_SIZE;
+
+        if (move > 0) {
+            if (pages < ViboraApp.Config.MAX_PAGES) {
+                pages++;
+            } else if (_secondPage != null) {
+                // drop the first page: the window starts at the second one
+                start = _secondPage;
+            }
+        } else if (move < 0 && start != null) {
+            List<FeedRow> before = queryPage(
+                    FeedContract.SELECTION_BEFORE_KEY, start,
+                    FeedContract.PAGE_SORTORDER_REVERSE, pageSize
+            );
+            start = before.size() < pageSize ? null : before.get(before.size() - 1);
+        }
+
+        List<FeedRow> rows = queryPage(
+                start == null ? null : FeedContract.SELECTION_FROM_KEY, start,
+                FeedContract.PAGE_SORTORDER, pages * pageSize
+        );
+        _hasMore = rows.size() >= pages * pageSize;
+        _secondPage = rows.size() > pageSize ? rows.get(pageSize) : null;
+        _start = start;
+        _pages = pages;
+        _move = 0;
+        return FeedSnapshot.diff(base, rows);
+    }
+
+    /**
+     * Liest nur die geänderten Zeilen neu. Passt eine nicht mehr zur selection (z.B.
+     * gelöscht), fällt sie weg.
+     *
+     * @param base die angezeigten Zeilen
+     * @param ids die _IDs der geänderten Zeilen
+     * @return base mit den neuen Zeilen
+     */
+    private List<FeedRow> reloadRows(List<FeedRow> base, Set<Long> ids) {
+        StringBuilder selection = new StringBuilder("(" + _selection + ") AND " + FeedContract.Feeds._ID + " IN (");
+        String[] args = new String[_selectionArgs.length + ids.size()];
+        System.arraycopy(_selectionArgs, 0, args, 0, _selectionArgs.length);
+        int i = _selectionArgs.length;
+        for (Long id : ids) {
+            selection.append(i == _selectionArgs.length ? "?" : ",?");
+            args[i++] = Long.toString(id);
+        }
+        selection.append(")");
+
+        HashMap<Long, FeedRow> fresh = new HashMap<>();
+        for (FeedRow row : query(FeedContentProvider.CONTENT_URI, FeedContract.projection,
+                selection.toString(), args, null)) {
+            fresh.put(row.id, row);
+        }
+        ArrayList<FeedRow> rows = new ArrayList<>(base.size());
+        for (FeedRow row : base) {
+            if (!ids.contains(row.id)) {
+                rows.add(row);
+            } else if (fresh.containsKey(row.id)) {
+                rows.add(fresh.get(row.id));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param keySelection Bedingung für den Schlüssel oder null
+     */
+    private List<FeedRow> queryPage(String keySelection, FeedRow key, String sortOrder, int limit) {
+        String selection = _selection;
+        String[] args = _selectionArgs;
+        if (keySelection != null) {
+            selection = "(" + _selection + ") AND " + keySelection;
+            args = new String[_selectionArgs.length + 3];
+            System.arraycopy(_selectionArgs, 0, args, 0, _selectionArgs.length);
+            args[_selectionArgs.length] = key.date;
+            args[_selectionArgs.length + 1] = key.date;
+            args[_selectionArgs.length + 2] = Long.toString(key.id);
+        }
+        Uri uri = FeedContentProvider.CONTENT_URI.buildUpon()
+                .appendQueryParameter(FeedContentProvider.QUERY_LIMIT, Integer.toString(limit))
+                .build();
+        return query(uri, FeedContract.projection, selection, args, sortOrder);
+    }
+
+    private List<FeedRow> query(Uri uri, String[] projection, String selection,
+                                String[] args, String sortOrder) {
+        Cursor c = getContext().getContentResolver().query(
+                uri, projection, selection, args, sortOrder
+        );
+        if (c == null) return new ArrayList<>();
+        try {
+            return FeedRow.readAll(c);
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(FeedSnapshot snapshot) {
+        if (isReset()) return;
+        _snapshot = snapshot;
+        if (isStarted()) super.deliverResult(snapshot);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!_observing) {
+            getContext().getContentResolver().registerContentObserver(
+                    _source == 0 ? FeedContentProvider.CONTENT_URI : FeedContentProvider.sourceUri(_source),
+                    true, _observer
+            );
+            _observing = true;
+        }
+        if (_snapshot != null) deliverResult(_snapshot);
+        if (takeContentChanged() || _snapshot == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    /**
+     * Die geänderten Zeilen des abgebrochenen Ladens sind verloren: alles neu laden.
+     */
+    @Override
+    public void onCanceled(FeedSnapshot snapshot) {
+        _fullReload = true;
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (_observing) {
+            getContext().getContentResolver().unregisterContentObserver(_observer);
+            _observing = false;
+        }
+        _snapshot = null;
+    }
+}
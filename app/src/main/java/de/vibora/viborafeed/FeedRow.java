@@ -0,0 +1,100 @@
+package de.vibora.viborafeed;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Eine Zeile der Liste, unabhängig vom Cursor. Der {@link FeedPageLoader} liest die
+ * Zeilen im Hintergrund, so kann der Cursor gleich wieder geschlossen werden und der
+ * {@link FeedAdapter} zwei Stände vergleichen.
+ */
+public class FeedRow {
+    public final long id;
+    public final String title;
+    /**
+     * wie in der DB, siehe {@link FeedContract#DATABASE_DATETIME_FORMAT}
+     */
+    public final String date;
+    public final String link;
+    /**
+     * die Vorschau bzw. bei der Suche das Snippet um den Treffer
+     */
+    public final String body;
+    public final String imageKey;
+    public final int source;
+    public final int flag;
+
+    public FeedRow(long id, String title, String date, String link, String body,
+                   String imageKey, int source, int flag) {
+        this.id = id;
+        this.title = title;
+        this.date = date;
+        this.link = link;
+        this.body = body;
+        this.imageKey = imageKey;
+        this.source = source;
+        this.flag = flag;
+    }
+
+    /**
+     * @return eine Kopie mit anderem Flag
+     */
+    public FeedRow withFlag(int flag) {
+        return new FeedRow(id, title, date, link, body, imageKey, source, flag);
+    }
+
+    /**
+     * @return true, wenn die Zeile gleich aussieht (die _ID wird nicht verglichen)
+     */
+    public boolean sameContent(FeedRow other) {
+        return flag == other.flag
+                && source == other.source
+                && equal(title, other.title)
+                && equal(date, other.date)
+                && equal(body, other.body)
+                && equal(imageKey, other.imageKey)
+                && equal(link, other.link);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Liest alle Zeilen eines Cursors mit FeedContract.projection bzw. searchProjection.
+     *
+     * @param c der Cursor, er wird nicht geschlossen
+     * @return die Zeilen
+     */
+    public static List<FeedRow> readAll(Cursor c) {
+        int colId = c.getColumnIndexOrThrow(FeedContract.Feeds._ID);
+        int colTitle = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_Title);
+        int colDate = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_Date);
+        int colLink = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_Link);
+        int colPreview = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_Preview);
+        int colImageKey = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_ImageKey);
+        int colSource = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_Source);
+        int colFlag = c.getColumnIndexOrThrow(FeedContract.Feeds.COLUMN_Flag);
+        // only the search has a snippet
+        int colBody = c.getColumnIndex(FeedContract.Search.COLUMN_Snippet);
+        if (colBody < 0) colBody = colPreview;
+
+        ArrayList<FeedRow> rows = new ArrayList<>(c.getCount());
+        c.moveToPosition(-1);
+        while (c.moveToNext()) {
+            rows.add(new FeedRow(
+                    c.getLong(colId),
+                    c.getString(colTitle),
+                    c.getString(colDate),
+                    c.getString(colLink),
+                    c.getString(colBody),
+                    c.getString(colImageKey),
+                    c.getInt(colSource),
+                    c.getInt(colFlag)
+            ));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,73 @@
+package de.vibora.viborafeed;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * Ein Stand der Liste und der Unterschied zum vorherigen Stand (base). Der Unterschied
+ * wird im Hintergrund berechnet, der {@link FeedAdapter} muss dann nur noch die
+ * geänderten Zeilen neu binden.
+ */
+public class FeedSnapshot {
+    public final List<FeedRow> rows;
+    /**
+     * der Stand, gegen den verglichen wurde
+     */
+    public final List<FeedRow> base;
+    /**
+     * der Unterschied zu base oder null
+     */
+    public final DiffUtil.DiffResult diff;
+
+    private FeedSnapshot(List<FeedRow> rows, List<FeedRow> base, DiffUtil.DiffResult diff) {
+        this.rows = rows;
+        this.base = base;
+        this.diff = diff;
+    }
+
+    /**
+     * Vergleicht rows mit dem Stand, den die Liste gerade zeigt. Blockiert, nicht im
+     * UI Thread nutzen.
+     *
+     * @param base der angezeigte Stand oder null
+     * @param rows die neuen Zeilen
+     * @return der neue Stand
+     */
+    public static FeedSnapshot diff(List<FeedRow> base, List<FeedRow> rows) {
+        if (base == null) return new FeedSnapshot(rows, null, null);
+        return new FeedSnapshot(
+                rows, base, DiffUtil.calculateDiff(new Callback(base, rows), false)
+        );
+    }
+
+    private static class Callback extends DiffUtil.Callback {
+        private final List<FeedRow> _old;
+        private final List<FeedRow> _new;
+
+        Callback(List<FeedRow> oldRows, List<FeedRow> newRows) {
+            _old = oldRows;
+            _new = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return _old.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return _new.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPos, int newPos) {
+            return _old.get(oldPos).id == _new.get(newPos).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPos, int newPos) {
+            return _old.get(oldPos).sameContent(_new.get(newPos));
+        }
+    }
+}
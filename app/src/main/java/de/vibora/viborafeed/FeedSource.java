@@ -0,0 +1,22 @@
+package de.vibora.viborafeed;
+
+/**
+ * Eine Feed-Quelle, so wie sie der {@link RefreshScheduler} abarbeitet.
+ *
+ * @see ViboraApp#getSources(android.content.SharedPreferences)
+ */
+public class FeedSource {
+    public final String path;
+
+    /**
+     * anzahl an tagen, wie alt ein neuer feed max sein darf
+     */
+    public final int expunge;
+    public final int id;
+
+    public FeedSource(String path, int expunge, int id) {
+        this.path = path;
+        this.expunge = expunge;
+        this.id = id;
+    }
+}
@@ -0,0 +1,36 @@
+package de.vibora.viborafeed;
+
+import android.content.ContentValues;
+
+import java.util.ArrayList;
+
+/**
+ * Was {@link Refresher#fetch(String, int, int)} von einer Quelle geholt hat: die neuen
+ * Feeds und ETag/Last-Modified des Servers. Die Validatoren dürfen erst gespeichert
+ * werden, wenn die Feeds in der DB sind, sonst kommt beim nächsten Mal ein 304 und
+ * die Feeds wären verloren.
+ *
+ * @see Refresher#storeValidators(FetchResult)
+ */
+public class FetchResult {
+    public final String rssurl;
+    /**
+     * die neuen Feeds (evtl. leer)
+     */
+    public final ArrayList<ContentValues> items;
+    /**
+     * false, wenn es nichts zu speichern gibt (z.B. 304 oder Feed nicht komplett gelesen)
+     */
+    public final boolean hasValidators;
+    public final String etag;
+    public final String lastModified;
+
+    public FetchResult(String rssurl, ArrayList<ContentValues> items,
+                       boolean hasValidators, String etag, String lastModified) {
+        this.rssurl = rssurl;
+        this.items = items;
+        this.hasValidators = hasValidators;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+}
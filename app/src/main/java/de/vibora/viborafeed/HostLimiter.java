@@ -0,0 +1,48 @@
+package de.vibora.viborafeed;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Begrenzt die Anzahl gleichzeitiger Verbindungen zu einem Host.
+ * Für jeden Host wird ein Semaphore mit maxPerHost Plätzen angelegt.
+ */
+public class HostLimiter {
+    private final int _maxPerHost;
+    private final HashMap<String, Semaphore> _hosts = new HashMap<>();
+
+    public HostLimiter(int maxPerHost) {
+        _maxPerHost = maxPerHost;
+    }
+
+    private synchronized Semaphore get(String url) {
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            host = "";
+        }
+        Semaphore s = _hosts.get(host);
+        if (s == null) {
+            s = new Semaphore(_maxPerHost, true);
+            _hosts.put(host, s);
+        }
+        return s;
+    }
+
+    /**
+     * Wartet auf einen freien Platz für den Host von url.
+     *
+     * @param url die url
+     * @throws InterruptedException wenn der Thread beim Warten unterbrochen wird
+     */
+    public void acquire(String url) throws InterruptedException {
+        get(url).acquire();
+    }
+
+    public void release(String url) {
+        get(url).release();
+    }
+}
@@ -0,0 +1,106 @@
+package de.vibora.viborafeed;
+
+import android.content.Context;
+import android.net.http.HttpResponseCache;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Die eine Stelle, an der die App Verbindungen öffnet (Feeds und Bilder).
+ * <p>
+ * Alle Verbindungen nutzen den Pool der Plattform (keep-alive, max
+ * {@link ViboraApp.Config#MAX_POOLED_CONNECTIONS} Verbindungen, TLS Sessions werden
+ * wiederverwendet) und dieselben Timeouts. Dazu kommt ein {@link HttpResponseCache} mit
+ * max {@link ViboraApp.Config#HTTP_CACHE_BYTES} Bytes auf der Platte, über den Bilder
+ * nicht erneut geholt werden. Die Feeds gehen am Cache vorbei, sie werden schon mit
+ * ETag/Last-Modified aus dem {@link Refresher} bedingt geholt.
+ * </p>
+ * Eine Verbindung darf nicht mit disconnect() beendet werden, sonst kommt sie nicht
+ * zurück in den Pool: dafür gibt es {@link #release(HttpURLConnection)}.
+ */
+public class HttpClient {
+    private static final String CACHE_DIR = "http";
+
+    private static HttpClient _me = null;
+
+    /**
+     * HttpClient ist als Singelton ausgelegt.
+     *
+     * @param ctx Der Kontext der Application.
+     * @return the http client
+     */
+    public static synchronized HttpClient ME(Context ctx) {
+        if (_me == null) _me = new HttpClient(ctx.getApplicationContext());
+        return _me;
+    }
+
+    private HttpClient(Context ctx) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(ViboraApp.Config.MAX_POOLED_CONNECTIONS));
+        if (HttpResponseCache.getInstalled() == null) {
+            try {
+                HttpResponseCache.install(
+                        new File(ctx.getCacheDir(), CACHE_DIR), ViboraApp.Config.HTTP_CACHE_BYTES
+                );
+            } catch (IOException e) {
+                Log.w(ViboraApp.TAG, "no http cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Öffnet eine Verbindung (noch ohne Request).
+     *
+     * @param url the url
+     * @param readTimeoutMs Read-Timeout in ms
+     * @param useCache true, wenn der Response aus dem Cache kommen darf
+     * @return die Verbindung
+     * @throws IOException wenn die url z.B. kein http ist
+     */
+    public HttpURLConnection open(URL url, int readTimeoutMs, boolean useCache) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(ViboraApp.Config.CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(readTimeoutMs);
+        conn.setUseCaches(useCache);
+        conn.setRequestProperty("User-Agent", ViboraApp.TAG);
+        return conn;
+    }
+
+    /**
+     * Schließt den Stream der Verbindung, damit sie zurück in den Pool kommt.
+     * Auch bei Codes wie 304 muss der Body geschlossen werden (sonst StrictMode Fehler
+     * "Explicit termination method 'end' not called" im GzipSource).
+     *
+     * @param conn die Verbindung oder null
+     */
+    public static void release(HttpURLConnection conn) {
+        if (conn == null) return;
+        InputStream is = null;
+        try {
+            is = conn.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? conn.getInputStream()
+                    : conn.getErrorStream();
+        } catch (IOException e) {
+            // no body to close
+        }
+        if (is == null) return;
+        try {
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Schreibt den Cache auf die Platte (z.B. am Ende eines Refresh).
+     */
+    public void flush() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) cache.flush();
+    }
+}
@@ -0,0 +1,134 @@
+package de.vibora.viborafeed;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Legt die Vorschaubilder der Feeds als Dateien ab. Der Dateiname (Schlüssel) ist ein
+ * Hash der Url des Bildes, so wird ein Bild, das mehrere Items nutzen, nur einmal
+ * geholt und gespeichert. In der Datenbank steht nur noch der Schlüssel.
+ *
+ * @see FeedContract.Feeds#COLUMN_ImageKey
+ */
+public class ImageStore {
+    private static final String DIR = "thumbs";
+
+    private final File _dir;
+
+    private static ImageStore _me = null;
+
+    /**
+     * ImageStore ist als Singelton ausgelegt.
+     *
+     * @param ctx Der Kontext der Application.
+     * @return the image store
+     */
+    public static synchronized ImageStore ME(Context ctx) {
+        if (_me == null) _me = new ImageStore(ctx.getApplicationContext());
+        return _me;
+    }
+
+    private ImageStore(Context ctx) {
+        _dir = new File(ctx.getFilesDir(), DIR);
+        if (!_dir.exists() && !_dir.mkdirs()) {
+            Log.e(ViboraApp.TAG, "can not create " + _dir);
+        }
+    }
+
+    /**
+     * @param url die Url des Bildes
+     * @return der Schlüssel für das Bild
+     */
+    public static String keyOf(String url) {
+        return FeedDedup.sha1(url);
+    }
+
+    /**
+     * Für Bilder, deren Url unbekannt ist (alte BLOBs aus der Datenbank).
+     *
+     * @param bytes das kodierte Bild
+     * @return der Schlüssel für das Bild
+     */
+    public static String keyOf(byte[] bytes) {
+        return "blob" + FeedDedup.sha1(bytes);
+    }
+
+    public File file(String key) {
+        return new File(_dir, key);
+    }
+
+    public boolean has(String key) {
+        return key != null && file(key).exists();
+    }
+
+    /**
+     * Speichert das Bild unter key. Es wird erst in eine temporäre Datei geschrieben,
+     * damit parallele Refreshs nie eine halbe Datei lesen.
+     *
+     * @param key der Schlüssel
+     * @param bytes das kodierte Bild
+     * @return false, wenn nicht gespeichert werden konnte
+     */
+    public boolean put(String key, byte[] bytes) {
+        File tmp = new File(_dir, key + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(bytes);
+            out.close();
+            out = null;
+            return tmp.renameTo(file(key));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (tmp.exists() && !tmp.delete()) {
+                Log.w(ViboraApp.TAG, "can not delete " + tmp);
+            }
+        }
+    }
+
+    /**
+     * @param key der Schlüssel oder null
+     * @return das Bild oder null
+     */
+    public Bitmap load(String key) {
+        if (key == null) return null;
+        File f = file(key);
+        if (!f.exists()) return null;
+        return BitmapFactory.decodeFile(f.getPath());
+    }
+
+    /**
+     * Bilder, die kein Feed mehr nutzt (auch übrig gebliebene temporäre Dateien).
+     *
+     * @param usedKeys die Schlüssel aus der DB
+     * @param olderThan nur Dateien, die vor diesem Zeitpunkt (ms) geändert wurden
+     * @return die Dateien, die gelöscht werden können
+     */
+    public List<File> unused(Set<String> usedKeys, long olderThan) {
+        ArrayList<File> result = new ArrayList<>();
+        File[] files = _dir.listFiles();
+        if (files == null) return result;
+        for (File f : files) {
+            if (!usedKeys.contains(f.getName()) && f.lastModified() < olderThan) result.add(f);
+        }
+        return result;
+    }
+}
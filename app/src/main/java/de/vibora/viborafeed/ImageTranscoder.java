@@ -0,0 +1,96 @@
+package de.vibora.viborafeed;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Macht aus einem heruntergeladenen Bild das Vorschaubild für den {@link ImageStore}.
+ * <p>
+ * Zuerst wird nur die Größe gelesen (inJustDecodeBounds), dann wird mit inSampleSize
+ * so dekodiert, dass das Bild nur wenig größer als {@link ViboraApp.Config#MAX_IMG_WIDTH}
+ * ist. Skalieren und runde Ecken passieren in einem einzigen Zeichenvorgang.
+ * Gespeichert wird als WebP mit {@link #QUALITY} (ab API 18 mit Alpha-Kanal für die
+ * Ecken), auf älteren Geräten als PNG.
+ * </p>
+ */
+public final class ImageTranscoder {
+    /**
+     * Qualität des verlustbehafteten Formats
+     */
+    public static final int QUALITY = 80;
+
+    private ImageTranscoder() {}
+
+    /**
+     * @param encoded das Bild, wie es vom Server kommt
+     * @param width gewünschte Breite
+     * @return das kodierte Vorschaubild oder null, wenn es kein Bild ist
+     */
+    public static byte[] thumbnail(byte[] encoded, int width) {
+        if (encoded == null || encoded.length == 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, width);
+        Bitmap sampled = BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        if (sampled == null) return null;
+
+        Bitmap output = round(sampled, width);
+        sampled.recycle();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            output.compress(Bitmap.CompressFormat.WEBP, QUALITY, stream);
+        } else {
+            output.compress(Bitmap.CompressFormat.PNG, 0, stream);
+        }
+        output.recycle();
+        return stream.toByteArray();
+    }
+
+    /**
+     * @return die größte Zweierpotenz, bei der das Bild noch mind. width breit ist
+     */
+    static int sampleSize(int srcWidth, int width) {
+        int sample = 1;
+        while (srcWidth / (sample * 2) >= width) sample *= 2;
+        return sample;
+    }
+
+    /**
+     * Zeichnet src auf die Breite width skaliert und mit runden Ecken in ein neues Bitmap.
+     * Das Seitenverhältnis bleibt erhalten.
+     */
+    private static Bitmap round(Bitmap src, int width) {
+        float ratio = (float) width / src.getWidth();
+        int height = Math.max(1, Math.round(src.getHeight() * ratio));
+        Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+
+        BitmapShader shader = new BitmapShader(src, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        Matrix matrix = new Matrix();
+        matrix.setScale(ratio, ratio);
+        shader.setLocalMatrix(matrix);
+
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setFilterBitmap(true);
+        paint.setShader(shader);
+        RectF rect = new RectF(0.0f, 0.0f, width, height);
+        canvas.drawRoundRect(rect, ViboraApp.Config.IMG_ROUND, ViboraApp.Config.IMG_ROUND, paint);
+        return output;
+    }
+}
@@ -27,10 +27,6 @@ import android.webkit.WebViewClient;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.TimeZone;
-
 /**
  * Diese Activity stellt die Liste der Feeds dar. Die Liste selbst
  * ist in {@link FeedListFragment} zu finden.
@@ -147,7 +143,8 @@ public class MainActivity extends AppCompatActivity {
         ctx = this;
         setContentView(R.layout.activity_main);
         umm = (UiModeManager) getSystemService(Context.UI_MODE_SERVICE);
-        ViboraApp.alarm.restart(this);;
+        ViboraApp.alarm.restart(this);
+        DbMaintenance.schedule(this);
 
         try {
             ActionBar ab = getSupportActionBar();
@@ -226,7 +223,6 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         Log.d(ViboraApp.TAG, "onResume");
         ViboraApp.withGui = true;
-        new DbExpunge().execute();
 
         SharedPreferences mPreferences = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
         boolean night = mPreferences.getBoolean("nightmode_use", false);
@@ -275,87 +271,4 @@ public class MainActivity extends AppCompatActivity {
             return null;
         }
     }
-
-    /**
-     * Dient zum Beseitigen von gelöschten Feeds. Achtung! Wird nur gemacht,
-     * wenn man die App auch öffnet!
-     */
-    private class DbExpunge extends AsyncTask<Void, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-
-            // Vibora Feed
-            Date date = new Date();
-            c.setTime(date);
-            c.add(Calendar.DAY_OF_MONTH, -1 * ViboraApp.Source1.expunge);
-            date = c.getTime();
-            String dateStr = FeedContract.dbFriendlyDate(date);
-
-            String where = FeedContract.Feeds.COLUMN_Date + "<? and "
-                    + FeedContract.Feeds.COLUMN_Deleted + "=? and "
-                    + FeedContract.Feeds.COLUMN_Source + "=?";
-            getContentResolver().delete(
-                    FeedContentProvider.CONTENT_URI,
-                    where,
-                    new String[]{dateStr, Integer.toString(FeedContract.Flag.DELETED), ViboraApp.Source1.number}
-            );
-
-            // Feed, den man selbst einstellt
-            date = new Date();
-            c.setTime(date);
-            c.add(Calendar.DAY_OF_MONTH, -1 * ViboraApp.Source2.expunge);
-            date = c.getTime();
-            dateStr = FeedContract.dbFriendlyDate(date);
-
-            where = FeedContract.Feeds.COLUMN_Date + "<? and "
-                    + FeedContract.Feeds.COLUMN_Deleted + "=? and "
-                    + FeedContract.Feeds.COLUMN_Source + "=?";
-            getContentResolver().delete(
-                    FeedContentProvider.CONTENT_URI,
-                    where,
-                    new String[]{dateStr, Integer.toString(FeedContract.Flag.DELETED), ViboraApp.Source2.number}
-            );
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-            new AutoDelete().execute();
-        }
-    }
-
-    private class AutoDelete extends AsyncTask<Void, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-            SharedPreferences mPreferences = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
-            int autodeleteDays = mPreferences.getInt("autodelete", 0);
-            if (autodeleteDays < 1) return null;
-
-            Date date = new Date();
-            c.setTime(date);
-            c.add(Calendar.DAY_OF_MONTH, -1 * autodeleteDays);
-            date = c.getTime();
-            String dateStr = FeedContract.dbFriendlyDate(date);
-
-            String where = FeedContract.Feeds.COLUMN_Date + "<? and "
-                    + FeedContract.Feeds.COLUMN_Flag + "<> ?";
-
-            ContentValues values = new ContentValues();
-            values.put(FeedContract.Feeds.COLUMN_Deleted, FeedContract.Flag.DELETED);
-
-            getContentResolver().update(
-                    FeedContentProvider.CONTENT_URI,
-                    values,
-                    where,
-                    new String[]{dateStr, Integer.toString(FeedContract.Flag.FAVORITE)}
-            );
-
-            return null;
-        }
-    }
 }
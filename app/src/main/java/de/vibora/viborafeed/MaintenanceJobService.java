@@ -0,0 +1,92 @@
+package de.vibora.viborafeed;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Führt die {@link DbMaintenance} ab API 21 als Job aus: nur wenn das Gerät nicht
+ * genutzt wird und lädt.
+ *
+ * @see DbMaintenance#schedule(Context)
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+    /**
+     * nicht dieselbe Id wie die Jobs des {@link RefreshJobService}
+     */
+    private static final int JOB_MAINTENANCE = 3;
+
+    private AsyncTask<Void, Void, Void> _task = null;
+
+    /**
+     * das Stop-Signal des laufenden Tasks, je Start ein neues
+     */
+    private AtomicBoolean _stop = null;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        _stop = stop;
+        _task = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... voids) {
+                // the job constraints guarantee idle and charging
+                DbMaintenance.run(MaintenanceJobService.this, true, stop);
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void aVoid) {
+                // stopped: the scheduler does not wait for this job any more
+                if (_task != this) return;
+                _task = null;
+                jobFinished(params, false);
+            }
+        };
+        _task.execute();
+        return true;
+    }
+
+    /**
+     * Das Gerät wird wieder genutzt. Die {@link DbMaintenance} hört nach dem laufenden
+     * Schritt auf, der Rest kommt beim nächsten Mal dran.
+     *
+     * @return true, wenn die Wartung noch lief und der Job wiederholt werden soll
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (_task == null) return false;
+        _stop.set(true);
+        _task = null;
+        return true;
+    }
+
+    /**
+     * Plant die Wartung. Ist sie mit dem Intervall schon geplant, bleibt sie, wie sie ist.
+     *
+     * @param ctx the context
+     * @param intervalMillis das Intervall in ms
+     */
+    public static void schedule(Context ctx, long intervalMillis) {
+        JobScheduler scheduler = (JobScheduler) ctx.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_MAINTENANCE && job.getIntervalMillis() == intervalMillis) return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_MAINTENANCE, new ComponentName(ctx, MaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(intervalMillis)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+}
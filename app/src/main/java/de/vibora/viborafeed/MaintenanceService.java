@@ -0,0 +1,25 @@
+package de.vibora.viborafeed;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Führt die {@link DbMaintenance} vor API 21 aus. Der Alarm dazu weckt das Gerät nicht,
+ * die Wartung läuft also nur, wenn es ohnehin wach ist. Ob es genutzt wird oder lädt,
+ * ist unbekannt, daher gibt es hier kein volles VACUUM.
+ *
+ * @see DbMaintenance#schedule(android.content.Context)
+ */
+public class MaintenanceService extends IntentService {
+
+    public MaintenanceService() {
+        super(MaintenanceService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        DbMaintenance.run(this, false, new AtomicBoolean(false));
+    }
+}
@@ -0,0 +1,39 @@
+package de.vibora.viborafeed;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.support.v4.content.WakefulBroadcastReceiver;
+import android.util.Log;
+
+/**
+ * Nur vor API 21: wartet auf eine Verbindung, wenn ein Refresh offline war. Der
+ * Receiver ist im Manifest deaktiviert und wird nur solange aktiviert, bis das Gerät
+ * wieder online ist. Das ersetzt den Alarm, der offline alle paar Sekunden weckte.
+ *
+ * @see Alarm#retry(Context)
+ */
+public class NetworkReceiver extends WakefulBroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!Refresher.ME(context).isOnline()) return;
+        Log.d(ViboraApp.TAG, "online again");
+        setEnabled(context, false);
+        startWakefulService(context, new Intent(context, RefreshService.class));
+    }
+
+    /**
+     * @param context the context
+     * @param enabled true, wenn auf eine Verbindung gewartet werden soll
+     */
+    public static void setEnabled(Context context, boolean enabled) {
+        context.getPackageManager().setComponentEnabledSetting(
+                new ComponentName(context, NetworkReceiver.class),
+                enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
+                        : PackageManager.COMPONENT_ENABLED_STATE_DISABLED,
+                PackageManager.DONT_KILL_APP
+        );
+    }
+}
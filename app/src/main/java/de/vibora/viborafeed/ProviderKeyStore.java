@@ -0,0 +1,63 @@
+package de.vibora.viborafeed;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Liefert dem {@link FeedDedup} die Schlüssel aus der Spalte COLUMN_Key über den
+ * {@link FeedContentProvider}.
+ *
+ * @see FeedContract.Feeds#COLUMN_Key
+ */
+public class ProviderKeyStore implements FeedDedup.KeyStore {
+    private final Context _ctx;
+
+    public ProviderKeyStore(Context ctx) {
+        _ctx = ctx;
+    }
+
+    @Override
+    public Collection<String> allKeys() {
+        ArrayList<String> keys = new ArrayList<>();
+        Cursor c = _ctx.getContentResolver().query(
+                FeedContentProvider.CONTENT_URI,
+                new String[]{FeedContract.Feeds.COLUMN_Key},
+                FeedContract.Feeds.COLUMN_Key + " IS NOT NULL",
+                null,
+                null
+        );
+        if (c != null) {
+            keys.ensureCapacity(c.getCount());
+            while (c.moveToNext()) keys.add(c.getString(0));
+            c.close();
+        }
+        return keys;
+    }
+
+    @Override
+    public Collection<String> storedKeys(List<String> keys) {
+        HashSet<String> stored = new HashSet<>();
+        StringBuilder sel = new StringBuilder(FeedContract.Feeds.COLUMN_Key + " IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            sel.append(i == 0 ? "?" : ",?");
+        }
+        sel.append(")");
+        Cursor c = _ctx.getContentResolver().query(
+                FeedContentProvider.CONTENT_URI,
+                new String[]{FeedContract.Feeds.COLUMN_Key},
+                sel.toString(),
+                keys.toArray(new String[keys.size()]),
+                null
+        );
+        if (c != null) {
+            while (c.moveToNext()) stored.add(c.getString(0));
+            c.close();
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,117 @@
+package de.vibora.viborafeed;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.HashMap;
+
+/**
+ * Führt den Refresh ab API 21 als Job aus. Der Job läuft nur mit Netz, der Refresh
+ * passiert innerhalb der Laufzeit des Jobs (der Prozess wird solange nicht beendet) und
+ * schlägt er fehl, wiederholt das System ihn mit exponential backoff.
+ *
+ * @see Alarm#start(Context)
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class RefreshJobService extends JobService {
+    /**
+     * der regelmäßige Refresh im eingestellten Intervall
+     */
+    private static final int JOB_PERIODIC = 1;
+
+    /**
+     * ein einmaliger Refresh, sobald Netz da ist
+     */
+    private static final int JOB_NOW = 2;
+
+    private final HashMap<Integer, AsyncTask<Void, Void, Boolean>> _tasks = new HashMap<>();
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        AsyncTask<Void, Void, Boolean> task = new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... voids) {
+                return Alarm.refresh(RefreshJobService.this);
+            }
+
+            @Override
+            protected void onPostExecute(Boolean complete) {
+                _tasks.remove(params.getJobId());
+                if (!complete) Log.w(ViboraApp.TAG, "refresh incomplete, job will be retried");
+                jobFinished(params, !complete);
+            }
+        };
+        _tasks.put(params.getJobId(), task);
+        task.execute();
+        return true;
+    }
+
+    /**
+     * Das System bricht den Job ab (z.B. weil das Netz weg ist): der Refresh wird
+     * unterbrochen und der Job später wiederholt.
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        AsyncTask<Void, Void, Boolean> task = _tasks.remove(params.getJobId());
+        if (task != null) task.cancel(true);
+        return true;
+    }
+
+    /**
+     * Plant den regelmäßigen Refresh. Ist er mit dem Intervall schon geplant, bleibt er,
+     * wie er ist (sonst würde die Wartezeit jedes Mal neu beginnen).
+     *
+     * @param ctx the context
+     * @param intervalMillis das Intervall in ms
+     */
+    public static void schedule(Context ctx, long intervalMillis) {
+        JobScheduler scheduler = (JobScheduler) ctx.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_PERIODIC && job.getIntervalMillis() == intervalMillis) return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_PERIODIC, new ComponentName(ctx, RefreshJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(intervalMillis)
+                .setBackoffCriteria(
+                        ViboraApp.Config.RETRY_BACKOFF_SEC * 1000L, JobInfo.BACKOFF_POLICY_EXPONENTIAL
+                )
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    /**
+     * Plant einen einmaligen Refresh, der startet, sobald Netz da ist.
+     *
+     * @param ctx the context
+     */
+    public static void now(Context ctx) {
+        JobScheduler scheduler = (JobScheduler) ctx.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo job = new JobInfo.Builder(JOB_NOW, new ComponentName(ctx, RefreshJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(
+                        ViboraApp.Config.RETRY_BACKOFF_SEC * 1000L, JobInfo.BACKOFF_POLICY_EXPONENTIAL
+                )
+                .build();
+        scheduler.schedule(job);
+    }
+
+    /**
+     * Entfernt beide Jobs.
+     *
+     * @param ctx the context
+     */
+    public static void cancel(Context ctx) {
+        JobScheduler scheduler = (JobScheduler) ctx.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        scheduler.cancel(JOB_PERIODIC);
+        scheduler.cancel(JOB_NOW);
+    }
+}
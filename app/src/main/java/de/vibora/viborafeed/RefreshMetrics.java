@@ -0,0 +1,149 @@
+package de.vibora.viborafeed;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Sammelt die Zeiten der Schritte eines Refresh (pro Quelle) bzw. der Wartung und
+ * schreibt sie am Ende in die Tabelle {@link FeedContract.Metrics}. Die Quellen laufen parallel, daher ist
+ * {@link #add(int, String, long, long, long)} synchronisiert.
+ * <p>
+ * Da der Feed direkt aus der Verbindung geparst wird, sind Download und Parsen ein
+ * gemeinsamer Schritt ({@link #DOWNLOAD_PARSE}), ohne die Zeit der Blacklist.
+ * </p>
+ *
+ * @see FeedContentProvider#METRICS_SUMMARY_URI
+ */
+public class RefreshMetrics {
+    public static final String DNS = "dns";
+    /**
+     * Verbindung, Request und Warten auf den Response Code
+     */
+    public static final String CONNECT = "connect";
+    public static final String DOWNLOAD_PARSE = "download_parse";
+    public static final String BLACKLIST = "blacklist";
+    public static final String DEDUP = "dedup";
+    public static final String DB_WRITE = "db_write";
+    public static final String IMAGES = "images";
+    /**
+     * die Bilder der Feeds, die eine eigene Notifikation bekommen
+     */
+    public static final String NOTIFY_IMAGES = "notify_images";
+    public static final String NOTIFY = "notify";
+    public static final String TOTAL = "total";
+
+    /**
+     * Schritte der Wartung, siehe {@link DbMaintenance}
+     */
+    public static final String EXPUNGE = "expunge";
+    public static final String AUTODELETE = "autodelete";
+    public static final String VACUUM = "vacuum";
+    /**
+     * das einmalige volle VACUUM, das eine alte Datei auf auto_vacuum INCREMENTAL umstellt
+     */
+    public static final String VACUUM_CONVERT = "vacuum_convert";
+    public static final String OPTIMIZE = "optimize";
+    public static final String THUMBS = "thumbs";
+    /**
+     * Gesamtzeit der Wartung (statt {@link #TOTAL})
+     */
+    public static final String MAINTENANCE = "maintenance";
+
+    /**
+     * Quelle für Schritte, die alle Quellen gemeinsam machen
+     */
+    public static final int ALL_SOURCES = 0;
+
+    private final long _time = System.currentTimeMillis();
+    private final long _start = System.nanoTime();
+    private final ArrayList<ContentValues> _rows = new ArrayList<>();
+
+    /**
+     * @param source id der Quelle oder {@link #ALL_SOURCES}
+     * @param phase der Schritt, z.B. {@link #CONNECT}
+     * @param nanos Dauer in ns
+     * @param bytes gelesene Bytes oder 0
+     * @param count Anzahl der verarbeiteten Items/Bilder oder 0
+     */
+    public synchronized void add(int source, String phase, long nanos, long bytes, long count) {
+        ContentValues values = new ContentValues();
+        values.put(FeedContract.Metrics.COLUMN_Time, _time);
+        values.put(FeedContract.Metrics.COLUMN_Source, source);
+        values.put(FeedContract.Metrics.COLUMN_Phase, phase);
+        values.put(FeedContract.Metrics.COLUMN_Millis, nanos / 1000000L);
+        values.put(FeedContract.Metrics.COLUMN_Bytes, bytes);
+        values.put(FeedContract.Metrics.COLUMN_Count, count);
+        _rows.add(values);
+    }
+
+    /**
+     * Schreibt alle Zeiten und die Gesamtzeit mit einem bulkInsert in die DB.
+     *
+     * @param ctx the context
+     */
+    public void save(Context ctx) {
+        save(ctx, TOTAL);
+    }
+
+    /**
+     * @param ctx the context
+     * @param totalPhase unter diesem Namen wird die Gesamtzeit gespeichert
+     */
+    public void save(Context ctx, String totalPhase) {
+        add(ALL_SOURCES, totalPhase, System.nanoTime() - _start, 0, 0);
+        ContentValues[] rows;
+        synchronized (this) {
+            rows = _rows.toArray(new ContentValues[_rows.size()]);
+            _rows.clear();
+        }
+        try {
+            ctx.getContentResolver().bulkInsert(FeedContentProvider.METRICS_URI, rows);
+        } catch (SQLiteException e) {
+            // e.g. disk full: the timings are lost, the refresh is not
+            Log.w(ViboraApp.TAG, "metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zählt die gelesenen Bytes eines Streams.
+     */
+    public static class CountingInputStream extends FilterInputStream {
+        private long _count = 0;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public long count() {
+            return _count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) _count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) _count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            _count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package de.vibora.viborafeed;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Holt alle Quellen parallel mit einer begrenzten Anzahl an Worker-Threads.
+ * Pro Host sind nur {@link ViboraApp.Config#MAX_CONNECTIONS_PER_HOST} Verbindungen
+ * gleichzeitig offen, jede Quelle hat max {@link ViboraApp.Config#SOURCE_TIMEOUT_SEC} sec Zeit.
+ * Die Ergebnisse aller Quellen werden am Ende gemeinsam in die DB geschrieben,
+ * so dauert ein Refresh nur so lange wie die langsamste Quelle. ETag/Last-Modified
+ * der Quellen werden erst danach gespeichert.
+ *
+ * @see Refresher#fetch(String, int, int)
+ * @see Refresher#insertToDb(List)
+ */
+public class RefreshScheduler {
+    private final Refresher _refresher;
+    private final HostLimiter _limiter;
+
+    public RefreshScheduler(Refresher refresher) {
+        _refresher = refresher;
+        _limiter = new HostLimiter(ViboraApp.Config.MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Holt die Quellen und schreibt die neuen Feeds in die DB.
+     * Die Methode blockiert, bis alle Quellen fertig sind oder ihr Timeout erreicht haben.
+     *
+     * @param sources die Quellen
+     * @return false, wenn eine Quelle nicht erreichbar war oder ihr Timeout erreicht hat
+     */
+    public boolean run(List<FeedSource> sources) {
+        if (sources.isEmpty()) return true;
+        int workers = Math.min(sources.size(), ViboraApp.Config.MAX_REFRESH_WORKERS);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<FetchResult>> futures = new ArrayList<>();
+
+        for (final FeedSource source : sources) {
+            futures.add(pool.submit(new Callable<FetchResult>() {
+                @Override
+                public FetchResult call() throws Exception {
+                    _limiter.acquire(source.path);
+                    try {
+                        return _refresher.fetch(source.path, source.expunge, source.id);
+                    } finally {
+                        _limiter.release(source.path);
+                    }
+                }
+            }));
+        }
+        pool.shutdown();
+
+        // all sources run at the same time: the deadline is the same for all of them
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ViboraApp.Config.SOURCE_TIMEOUT_SEC);
+        ArrayList<FetchResult> fetched = new ArrayList<>();
+        boolean complete = true;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<FetchResult> future = futures.get(i);
+            try {
+                long left = Math.max(0L, deadline - System.nanoTime());
+                FetchResult result = future.get(left, TimeUnit.NANOSECONDS);
+                if (result == null) {
+                    complete = false;
+                } else {
+                    fetched.add(result);
+                }
+            } catch (TimeoutException e) {
+                Log.w(ViboraApp.TAG, "Timeout: " + sources.get(i).path);
+                future.cancel(true);
+                complete = false;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                complete = false;
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return _refresher.insertToDb(fetched) && complete;
+    }
+}
@@ -0,0 +1,30 @@
+package de.vibora.viborafeed;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Führt den Refresh vor API 21 aus. Der {@link Alarm} startet den Service mit einem
+ * WakeLock, der erst nach dem Refresh wieder freigegeben wird. So kann der Prozess
+ * nicht mitten im Schreiben in die DB beendet werden.
+ */
+public class RefreshService extends IntentService {
+
+    public RefreshService() {
+        super(RefreshService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            if (ViboraApp.alarm == null) ViboraApp.alarm = new Alarm();
+            if (Alarm.refresh(this)) {
+                ViboraApp.alarm.resetRetries(this);
+            } else {
+                ViboraApp.alarm.retry(this);
+            }
+        } finally {
+            Alarm.completeWakefulIntent(intent);
+        }
+    }
+}
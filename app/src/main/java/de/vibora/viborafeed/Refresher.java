@@ -3,42 +3,37 @@ package de.vibora.viborafeed;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
-import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 /**
  * Der Typ Refresher ist ein Singelton.
@@ -62,6 +57,55 @@ public class Refresher {
 
     private static Refresher _me = null;
 
+    private FeedDedup _dedup;
+
+    /**
+     * die Zeiten des aktuellen Refresh, siehe {@link #startMetrics()}
+     */
+    private volatile RefreshMetrics _metrics = new RefreshMetrics();
+
+    /**
+     * die Bilder, die insertToDb() noch nicht geholt hat, siehe {@link #fetchThumbnails()}
+     */
+    private ThumbnailFetcher _thumbnails = null;
+
+    /**
+     * Url eines Bildes, das noch nicht im {@link ImageStore} ist. Steht nur in den
+     * ContentValues von {@link #fetch(String, int, int)}, nicht in der DB.
+     */
+    private static final String IMAGE_URL = "image_url";
+
+    /**
+     * Gruppe der Notifikations eines Refresh. Die Zusammenfassung hat die Id 0, die
+     * Feeds ihre _ID (immer größer 0).
+     */
+    private static final String NOTIFY_GROUP = "de.vibora.viborafeed.NEWS";
+    private static final int SUMMARY_NOTIFY_ID = 0;
+
+    /**
+     * Icons aus den Resourcen, nur einmal dekodiert
+     */
+    private Bitmap _appIcon = null;
+    private Bitmap _errorIcon = null;
+
+    /**
+     * wird nur neu gebaut, wenn sich die Einstellung "blacklist" ändert
+     */
+    private volatile BlacklistMatcher _blacklist;
+
+    /**
+     * SharedPreferences hält Listener nur schwach, daher als Feld.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener _prefListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
+                    if ("blacklist".equals(key)) {
+                        _blacklist = BlacklistMatcher.fromCsv(pref.getString("blacklist", ""));
+                    }
+                }
+            };
+
     /**
      * Refresher ist als Singelton ausgelegt.
      * Der Context wird übergeben, da {@link ViboraApp#getContextOfApplication()}
@@ -79,6 +123,7 @@ public class Refresher {
     private Refresher(Context ctx) {
         _ctx = ctx;
         _newFeeds = new ArrayList<>();
+        _dedup = new FeedDedup(new ProviderKeyStore(ctx));
         _pref = PreferenceManager.getDefaultSharedPreferences(ViboraApp.getContextOfApplication());
         _notifyColor = Color.parseColor(
                 _pref.getString("notify_color", ViboraApp.Config.DEFAULT_notifyColor)
@@ -86,48 +131,8 @@ public class Refresher {
         _notifyType = Integer.parseInt(
                 _pref.getString("notify_type", ViboraApp.Config.DEFAULT_notifyType)
         );
-    }
-
-    /**
-     * Entscheidet, ob ein Feed neu ist.
-     * In ersten Schritt werden Feeds ignoriert, die DEFAULT_expunge überschreiten.
-     * Das ist wichtig, da sonst bereits aus der Datenbank entfernte Feeds als
-     * neu erkannt werden. Im zweiten Schritt wird lediglich der Titel in der
-     * Datenbank gesucht. Existiert dieser nicht, so wird true zurückgegeben.
-     *
-     * @see ViboraApp.Config
-     *
-     * @param date  the date
-     * @param title the title
-     * @param expunge anzahl an tagen, wie alt ein neuer feed max sein darf
-     * @return the boolean
-     */
-    public boolean isReallyFresh(Date date, String title, int expunge) {
-        boolean back = true;
-        Date now = new Date();
-        try {
-            long diff = now.getTime() - date.getTime();
-            long days = TimeUnit.DAYS.convert(diff, TimeUnit.MILLISECONDS);
-            if (days > expunge) {
-                back = false;
-            } else {
-                /// @todo same title could be possible ?!
-                Cursor c = _ctx.getContentResolver().query(
-                        FeedContentProvider.CONTENT_URI,
-                        FeedContract.projection,
-                        FeedContract.Feeds.COLUMN_Title+"=?",
-                        new String[]{title},
-                        null
-                );
-                if (c != null) {
-                    if (c.getCount() != 0) back = false;
-                    c.close();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return back;
+        _blacklist = BlacklistMatcher.fromCsv(_pref.getString("blacklist", ""));
+        _pref.registerOnSharedPreferenceChangeListener(_prefListener);
     }
 
     /**
@@ -164,94 +169,109 @@ public class Refresher {
     }
 
     /**
-     * Holt aus den Preferences das Date des letzten Refresh.
-     * Beim Datum wird +0200 nach GMT entfernt und die Stundenzahl angepasst. Sollte
-     * in den Preferences kein Datum sein,
-     * wird DEFAULT_expunge zur Erzeugung
-     * eines Datums in der Vergangenheit genutzt.
+     * Beginnt die Zeitmessung für einen neuen Refresh.
      *
-     * @param rssurl quelle als http://..... angabe
-     * @param expunge anzahl an tagen, wie alt ein neuer feed max sein darf
-     * @return a string with a 'good' HTTP Mod Time Request format
+     * @return die Messung, in die fetch() und insertToDb() schreiben
      */
-    public String ifModifiedSinceDate(String rssurl, int expunge) {
-        Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-
-        Date defaultDate = new Date();
-        c.setTime(defaultDate);
-        // Setting the default modified date to a date some days in the past (0 => 1970)
-        c.add(Calendar.DAY_OF_MONTH, -1 * expunge);
-        defaultDate = c.getTime();
-        Date lastUpdate = new Date(_pref.getLong("last_update_"+rssurl, defaultDate.getTime()));
-        c.setTime(lastUpdate);
-
-        SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.ENGLISH);
-        sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
-
-        return sdf.format(c.getTime()) + " GMT";
+    public RefreshMetrics startMetrics() {
+        _metrics = new RefreshMetrics();
+        return _metrics;
     }
 
     /**
-     * Methode sendet If-Modified-Since und wertet den Response Code aus.
+     * Öffnet genau eine Verbindung zu url über den {@link HttpClient}. Hat der Server bei
+     * einem früheren Refresh ETag bzw. Last-Modified geliefert, werden diese als
+     * If-None-Match bzw. If-Modified-Since mitgeschickt.
      * Könnte false negativ sein, wenn 301 (dauerhaft umgezogen) kommt.
      *
      * @param url the url
-     * @param expunge anzahl an tagen, wie alt ein neuer feed max sein darf
-     * @return false, wenn HTTP_NOT_MODIFIED oder der Code nicht 200 ist
+     * @return die Verbindung mit Code 200 oder null bei HTTP_NOT_MODIFIED bzw. anderen Codes
      * @throws Exception ausgelöst, wenn z.B. die url nicht stimmt
      */
-    public boolean newStuff(URL url, int expunge) throws Exception {
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        String now = ifModifiedSinceDate(url.toString(), expunge);
-        Log.d(ViboraApp.TAG, "If-Modified-Since: " + now);
-        conn.setRequestProperty("If-Modified-Since", now);
-        int responseCode = conn.getResponseCode();
-        /**
-        this close() removes the strictMode Error:
-        Explicit termination method 'end' not called
-        at com.android.okhttp.okio.GzipSource.<init>(GzipSource.java:62)
-        -> getResponseCode() does not close the inputStream automatically !
-         */
-        conn.getInputStream().close();
+    public HttpURLConnection openConditional(URL url) throws Exception {
+        String rssurl = url.toString();
+        HttpURLConnection conn = HttpClient.ME(_ctx).open(url, ViboraApp.Config.READ_TIMEOUT_MS, false);
+        String etag = _pref.getString("etag_" + rssurl, null);
+        String lastModified = _pref.getString("last_modified_" + rssurl, null);
+        if (etag != null) conn.setRequestProperty("If-None-Match", etag);
+        if (lastModified != null) conn.setRequestProperty("If-Modified-Since", lastModified);
+        Log.d(ViboraApp.TAG, "If-None-Match: " + etag + " If-Modified-Since: " + lastModified);
 
+        int responseCode = conn.getResponseCode();
         Log.d(ViboraApp.TAG, "Response Code: " + Integer.toString(responseCode));
         if (BuildConfig.DEBUG) {
-            error(Integer.toString(responseCode), "if modified since " + now);
+            error(Integer.toString(responseCode), "if none match " + etag);
         }
-        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
-            return false;
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            return conn;
         }
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            error(url.toString(), _ctx.getString(R.string.responseStrange));
+        // getResponseCode() does not close the inputStream automatically !
+        HttpClient.release(conn);
+        if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            error(rssurl, _ctx.getString(R.string.responseStrange));
             Log.e(ViboraApp.TAG, _ctx.getString(R.string.responseStrange));
-            return false;
         }
-        return true;
+        return null;
     }
 
     /**
-     * Holt Seite von rssurl und legt diese in XML-Doc ab.
-     * Die Methode setzt in den Preferences das Datum der letzten Änderung.
+     * Merkt sich ETag und Last-Modified des Servers für den nächsten Refresh.
+     * Wird erst aufgerufen, wenn die neuen Feeds der Quelle in der DB sind.
+     *
+     * @param result das Ergebnis von {@link #fetch(String, int, int)}
+     */
+    public void storeValidators(FetchResult result) {
+        if (!result.hasValidators) return;
+        String rssurl = result.rssurl;
+        String etag = result.etag;
+        String lastModified = result.lastModified;
+        SharedPreferences.Editor editor = _pref.edit();
+        if (etag != null) {
+            editor.putString("etag_" + rssurl, etag);
+        } else {
+            editor.remove("etag_" + rssurl);
+        }
+        if (lastModified != null) {
+            editor.putString("last_modified_" + rssurl, lastModified);
+        } else {
+            editor.remove("last_modified_" + rssurl);
+        }
+        // replaced by the validators of the server
+        editor.remove("last_update_" + rssurl);
+        editor.apply();
+    }
+
+    /**
+     * Holt rssurl mit einem (bedingten) Request und liest neue Items direkt aus
+     * dem Body dieser Verbindung. Es wird nichts in die DB geschrieben, daher kann die
+     * Methode von mehreren Threads des {@link RefreshScheduler} gleichzeitig genutzt werden.
      *
      * @param rssurl quelle als http://..... angabe
      * @param expunge anzahl an tagen, wie alt ein neuer feed max sein darf
-     * @return the doc
+     * @param sourceId aktuell ist 1 für vibora und 2 für das, was user eingestellt hat
+     * @return die neuen Feeds (evtl. leer) mit den Validatoren des Servers oder null, wenn
+     * die Quelle nicht erreichbar war
      */
-    public Document getDoc(String rssurl, int expunge) {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    public FetchResult fetch(String rssurl, int expunge, int sourceId) {
+        ArrayList<ContentValues> fresh = new ArrayList<>();
+        HttpURLConnection conn = null;
+        RefreshMetrics metrics = _metrics;
         try {
             URL url = new URL(rssurl);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            if (! newStuff(url, expunge)) return null;
-            InputStream is = url.openStream();
-            Document doc = db.parse(is);
-            doc.getDocumentElement().normalize();
-            SharedPreferences.Editor editor = _pref.edit();
-            editor.putLong("last_update_"+rssurl, new Date().getTime());
-            editor.apply();
-            return doc;
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
+            // resolve first to measure dns apart from connect, the result is cached
+            long start = System.nanoTime();
+            InetAddress.getAllByName(url.getHost());
+            metrics.add(sourceId, RefreshMetrics.DNS, System.nanoTime() - start, 0, 0);
+
+            start = System.nanoTime();
+            conn = openConditional(url);
+            metrics.add(sourceId, RefreshMetrics.CONNECT, System.nanoTime() - start, 0, 0);
+            if (conn == null) return new FetchResult(rssurl, fresh, false, null, null);
+            InputStream is = new RefreshMetrics.CountingInputStream(conn.getInputStream());
+            if (readItems(is, expunge, sourceId, fresh)) {
+                return new FetchResult(rssurl, fresh, true,
+                        conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+            }
         } catch (MalformedURLException e) {
             e.printStackTrace();
             error(rssurl, _ctx.getString(R.string.rssUrlWrong));
@@ -259,85 +279,214 @@ public class Refresher {
         } catch (Exception e) {
             error(rssurl, _ctx.getString(R.string.noConnection));
             Log.e(ViboraApp.TAG, _ctx.getString(R.string.noConnection));
+            return null;
+        } finally {
+            HttpClient.release(conn);
         }
-        return null;
+        return new FetchResult(rssurl, fresh, false, null, null);
     }
 
     /**
-     * Das Doc wird ausgelesen und in die DB geschrieben.
-     * Die neuen Feeds werden auch in _newFeeds abgelegt. Das _newFeeds Array wird
-     * so sortiert, dass die neusten Feeds bei id 0 zu finden sind.
+     * Der Stream wird mit dem {@link FeedParser} gelesen. Items, die nicht auf der Blacklist
+     * stehen und laut {@link FeedDedup} noch nicht in der DB sind, werden in fresh
+     * abgelegt. Der Stream wird danach geschlossen. Wird der Thread unterbrochen
+     * (Timeout im {@link RefreshScheduler}), wird das Parsen abgebrochen.
      *
+     * @param is der Stream des Feeds
      * @param expunge anzahl an tagen, wie alt ein neuer feed max sein darf
      * @param sourceId aktuell ist 1 für vibora und 2 für das, was user eingestellt hat
-     * @param doc the doc
+     * @param fresh nimmt die neuen Feeds auf
+     * @return false, wenn der Feed nicht (komplett) gelesen werden konnte
      */
-    public void insertToDb(Document doc, int expunge, int sourceId) {
-        if (doc == null) {
-            Log.d(ViboraApp.TAG, "doc is null - no insertToDb()");
-            return;
+    public boolean readItems(InputStream is, int expunge, int sourceId,
+                             ArrayList<ContentValues> fresh) {
+        if (is == null) {
+            Log.d(ViboraApp.TAG, "stream is null - no readItems()");
+            return false;
         }
 
-        String[] blacklist = getBlacklist();
-        NodeList nodeList = doc.getElementsByTagName("item");
-        // put to database if not the same  -------------------------------------------------
+        final BlacklistMatcher blacklist = _blacklist;
+        final ArrayList<FeedItem> items = new ArrayList<>();
+        // [0] ns in the blacklist, [1] parsed items
+        final long[] counts = new long[2];
+        RefreshMetrics metrics = _metrics;
+        long start = System.nanoTime();
         try {
-            Node n;
-            // run through item Tags
-            feediter:
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                n = nodeList.item(i);
-                String title = FeedContract.extract(n, "title");
-                String body = FeedContract.extract(n, "description");
-                String dateStr = FeedContract.extract(n, "pubDate");
-                Date date = FeedContract.rawToDate(dateStr);
-                for (String bl: blacklist) {
-                    Log.v(ViboraApp.TAG, "Check Blacklist: " + bl);
-                    if (body.contains(bl)) {
-                        Log.v(ViboraApp.TAG, "in body");
-                        continue feediter;
-                    }
-                    if (title.contains(bl)) {
-                        Log.v(ViboraApp.TAG, "in title");
-                        continue feediter;
-                    }
+            FeedParser.parse(is, expunge, new FeedParser.ItemListener() {
+                @Override
+                public boolean onItem(FeedItem item) {
+                    if (Thread.currentThread().isInterrupted()) return false;
+                    long t = System.nanoTime();
+                    boolean blacklisted = isBlacklisted(item, blacklist);
+                    counts[0] += System.nanoTime() - t;
+                    counts[1]++;
+                    if (!blacklisted) items.add(item);
+                    return true;
                 }
-                Log.v(ViboraApp.TAG, "is realy fresh?");
-                if (isReallyFresh(date, title, expunge)) {
-                    Log.v(ViboraApp.TAG, "  yes");
-                    ContentValues values = new ContentValues();
-                    values.put(FeedContract.Feeds.COLUMN_Title, title);
-                    values.put(FeedContract.Feeds.COLUMN_Date, FeedContract.dbFriendlyDate(date));
-                    values.put(FeedContract.Feeds.COLUMN_Link, FeedContract.extract(n, "link"));
-                    values.put(FeedContract.Feeds.COLUMN_Body, body);
-                    values.put(FeedContract.Feeds.COLUMN_Image, FeedContract.getBytes(
-                            FeedContract.getImage(n)
-                    ));
-                    values.put(FeedContract.Feeds.COLUMN_Source, sourceId);
-                    values.put(FeedContract.Feeds.COLUMN_Deleted, FeedContract.Flag.VISIBLE);
-                    values.put(FeedContract.Feeds.COLUMN_Flag, FeedContract.Flag.NEW);
-
-                    Uri uri = _ctx.getContentResolver().insert(FeedContentProvider.CONTENT_URI, values);
-
-                    if (uri != null) {
-                        long id = Long.parseLong(uri.getLastPathSegment());
-                        values.put(FeedContract.Feeds._ID, id);
-                        _newFeeds.add(values);
-                    }
-                } else {
-                    Log.v(ViboraApp.TAG, "  no");
-                }
-            }
-
+            });
         } catch (Exception ex) {
             ex.printStackTrace();
+            return false;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) return false;
+        long bytes = (is instanceof RefreshMetrics.CountingInputStream)
+                ? ((RefreshMetrics.CountingInputStream) is).count() : 0;
+        metrics.add(sourceId, RefreshMetrics.DOWNLOAD_PARSE,
+                System.nanoTime() - start - counts[0], bytes, counts[1]);
+        metrics.add(sourceId, RefreshMetrics.BLACKLIST, counts[0], 0, counts[1] - items.size());
+
+        start = System.nanoTime();
+        List<FeedItem> newItems = _dedup.filterNew(items);
+        metrics.add(sourceId, RefreshMetrics.DEDUP, System.nanoTime() - start, 0, newItems.size());
+        for (FeedItem item : newItems) {
+            if (Thread.currentThread().isInterrupted()) return false;
+            fresh.add(toValues(item, sourceId));
+        }
+        return true;
+    }
+
+    private boolean isBlacklisted(FeedItem item, BlacklistMatcher blacklist) {
+        if (blacklist.isEmpty()) return false;
+        String term = blacklist.find(item.title);
+        if (term == null) term = blacklist.find(item.description);
+        if (term == null) return false;
+        Log.v(ViboraApp.TAG, "Blacklist: '" + term + "' in " + item.title);
+        return true;
+    }
+
+    private ContentValues toValues(FeedItem item, int sourceId) {
+        ContentValues values = new ContentValues();
+        // html is removed once here, the list, notifications and share use the plain columns
+        String text = item.description == null ? "" : FeedContract.removeHtml(item.description);
+        values.put(FeedContract.Feeds.COLUMN_Title, item.title == null ? "" : FeedContract.removeHtml(item.title));
+        values.put(FeedContract.Feeds.COLUMN_Date, FeedContract.dbFriendlyDate(item.date));
+        values.put(FeedContract.Feeds.COLUMN_Link, item.link);
+        values.put(FeedContract.Feeds.COLUMN_Body, item.description == null ? "" : item.description);
+        values.put(FeedContract.Feeds.COLUMN_Text, text);
+        values.put(FeedContract.Feeds.COLUMN_Preview, FeedContract.preview(text));
+        String imageUrl = FeedContract.getImageUrl(item);
+        if (imageUrl != null) {
+            String imageKey = ImageStore.keyOf(imageUrl);
+            if (ImageStore.ME(_ctx).has(imageKey)) {
+                values.put(FeedContract.Feeds.COLUMN_ImageKey, imageKey);
+            } else {
+                values.put(IMAGE_URL, imageUrl);
+            }
         }
+        values.put(FeedContract.Feeds.COLUMN_Source, sourceId);
+        values.put(FeedContract.Feeds.COLUMN_Deleted, FeedContract.Flag.VISIBLE);
+        values.put(FeedContract.Feeds.COLUMN_Flag, FeedContract.Flag.NEW);
+        values.put(FeedContract.Feeds.COLUMN_Key, item.key);
+        return values;
+    }
+
+    /**
+     * Schreibt die zusammengeführten neuen Feeds aller Quellen als ein Batch (eine
+     * Transaktion, eine Benachrichtigung) in die DB. Erst danach werden ETag und
+     * Last-Modified der Quellen gespeichert.
+     * Kommt ein Schlüssel in mehreren Quellen vor, wird er nur einmal eingefügt.
+     * Die neuen Feeds werden auch in _newFeeds abgelegt. Fehlende Bilder werden hier nur
+     * vorgemerkt, geholt werden sie erst mit {@link #fetchNotifyThumbnails(int)} und
+     * {@link #fetchThumbnails()}.
+     *
+     * @param results die Ergebnisse aller Quellen
+     * @return false, wenn der Batch nicht geschrieben werden konnte
+     */
+    public boolean insertToDb(List<FetchResult> results) {
+        ArrayList<ContentValues> fresh = new ArrayList<>();
+        for (FetchResult result : results) fresh.addAll(result.items);
+        HashSet<String> keys = new HashSet<>();
+        ArrayList<ContentValues> batch = new ArrayList<>();
+        ArrayList<String> imageUrls = new ArrayList<>();
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        for (ContentValues values : fresh) {
+            if (!keys.add(values.getAsString(FeedContract.Feeds.COLUMN_Key))) continue;
+            // not a column
+            imageUrls.add(values.getAsString(IMAGE_URL));
+            values.remove(IMAGE_URL);
+            batch.add(values);
+            ops.add(ContentProviderOperation
+                    .newInsert(FeedContentProvider.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        if (ops.isEmpty()) {
+            for (FetchResult result : results) storeValidators(result);
+            return true;
+        }
+
+        if (_thumbnails == null) _thumbnails = new ThumbnailFetcher(_ctx);
+        RefreshMetrics metrics = _metrics;
+        long start = System.nanoTime();
+        int inserted = 0;
+        try {
+            ContentProviderResult[] written = _ctx.getContentResolver().applyBatch(
+                    FeedContentProvider.AUTHORITY, ops
+            );
+            for (int i = 0; i < written.length; i++) {
+                if (written[i].uri == null) continue;
+                ContentValues values = batch.get(i);
+                long id = Long.parseLong(written[i].uri.getLastPathSegment());
+                // ignored by the UNIQUE index: already in the db
+                if (id < 0) continue;
+                _dedup.remember(values.getAsString(FeedContract.Feeds.COLUMN_Key));
+                values.put(FeedContract.Feeds._ID, id);
+                _newFeeds.add(values);
+                inserted++;
+                if (imageUrls.get(i) != null) _thumbnails.add(imageUrls.get(i), values);
+            }
+        } catch (RemoteException | OperationApplicationException | SQLiteException e) {
+            // e.g. disk full or db locked: the validators stay as they were,
+            // the next refresh gets the items again
+            e.printStackTrace();
+            return false;
+        }
+        for (FetchResult result : results) storeValidators(result);
+        metrics.add(RefreshMetrics.ALL_SOURCES, RefreshMetrics.DB_WRITE,
+                System.nanoTime() - start, 0, inserted);
+        return true;
+    }
+
+    /**
+     * Holt vor den Notifikationen die Bilder der neuesten Feeds, die eine eigene
+     * Notifikation bekommen. Blockiert max {@link ViboraApp.Config#NOTIFY_IMAGE_TIMEOUT_SEC}
+     * sec, was bis dahin fehlt, holt {@link #fetchThumbnails()}.
+     *
+     * @param shown so viele der neuesten Feeds bekommen eine eigene Notifikation
+     */
+    public void fetchNotifyThumbnails(int shown) {
+        if (_thumbnails == null || _newFeeds.isEmpty()) return;
+        int count = _newFeeds.size();
+        // the newest feed is the last one, see sortFeeds()
+        ThumbnailFetcher top = _thumbnails.take(
+                _newFeeds.subList(count - Math.min(count, shown), count)
+        );
+        long start = System.nanoTime();
+        int images = top.run(ViboraApp.Config.NOTIFY_IMAGE_TIMEOUT_SEC);
+        _metrics.add(RefreshMetrics.ALL_SOURCES, RefreshMetrics.NOTIFY_IMAGES,
+                System.nanoTime() - start, 0, images);
+        _thumbnails.addAll(top);
     }
 
-    public String[] getBlacklist() {
-        String nos = _pref.getString("blacklist", "");
-        if (nos.equals("")) return new String[]{};
-        return nos.split(",");
+    /**
+     * Holt die übrigen Bilder, die {@link #insertToDb(List)} vorgemerkt hat. Blockiert bis
+     * zu {@link ViboraApp.Config#IMAGE_TIMEOUT_SEC} sec, sollte also erst nach den
+     * Notifikationen laufen.
+     */
+    public void fetchThumbnails() {
+        ThumbnailFetcher thumbnails = _thumbnails;
+        _thumbnails = null;
+        if (thumbnails == null) return;
+        long start = System.nanoTime();
+        int images = thumbnails.run();
+        _metrics.add(RefreshMetrics.ALL_SOURCES, RefreshMetrics.IMAGES,
+                System.nanoTime() - start, 0, images);
     }
 
     public void sortFeeds() {
@@ -361,34 +510,79 @@ public class Refresher {
      * @param pi Der PendingIntent, wenn man auf die Notification klickt
      */
     public void makeNotify(PendingIntent pi) {
-        Uri sound = Uri.parse("android.resource://" + ViboraApp.getContextOfApplication().getPackageName() + "/" + R.raw.notifysnd);
-        notify(_newFeeds.get(_newFeeds.size()-1), pi, sound, true);
+        NotificationManager mNotifyMgr =
+                (NotificationManager) _ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+        ContentValues cv = _newFeeds.get(_newFeeds.size()-1);
+        NotificationCompat.Builder mBuilder = builder(cv, pi, true);
+        mBuilder.setSound(notifySound());
+        setLights(mBuilder);
+        post(mNotifyMgr, cv.getAsInteger(FeedContract.Feeds._ID), mBuilder);
     }
 
     /**
-     * Macht viele Notifikations. Nur eine davon bekommt einen Sound.
-     * Als zusätzliche Action wird das öffnen des Feed-Links im Browser eingefügt.
+     * Macht eine Gruppe aus Notifikations: nur die neuesten
+     * {@link ViboraApp.Config#MAX_CHILD_NOTIFICATIONS} Feeds bekommen eine eigene (mit
+     * Vorschaubild), dazu kommt eine Zusammenfassung mit den Titeln (InboxStyle). Nur die
+     * Zusammenfassung bekommt Sound und LED. Als zusätzliche Action wird das öffnen des
+     * Feed-Links im Browser eingefügt.
      *
      * @param pi Der PendingIntent, wenn man auf die Notification klickt
      */
     public void makeNotifies(PendingIntent pi) {
-        Uri sound = Uri.parse("android.resource://" + ViboraApp.getContextOfApplication().getPackageName() + "/" + R.raw.notifysnd);
+        NotificationManager mNotifyMgr =
+                (NotificationManager) _ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+        int count = _newFeeds.size();
+        if (count == 1) {
+            ContentValues cv = _newFeeds.get(0);
+            NotificationCompat.Builder mBuilder = builder(cv, pi, false);
+            mBuilder.setSound(notifySound());
+            setLights(mBuilder);
+            post(mNotifyMgr, cv.getAsInteger(FeedContract.Feeds._ID), mBuilder);
+            return;
+        }
 
-        for (ContentValues cv : _newFeeds) {
-            notify(cv, pi, sound, false);
-            // make sound only 1x times
-            if (sound != null) sound = null;
+        // the newest feed is the last one
+        int children = Math.min(count, ViboraApp.Config.MAX_CHILD_NOTIFICATIONS);
+        NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
+        for (int i = count - 1; i >= count - children; i--) {
+            ContentValues cv = _newFeeds.get(i);
+            inbox.addLine(cv.getAsString(FeedContract.Feeds.COLUMN_Title));
+            NotificationCompat.Builder mBuilder = builder(cv, pi, false);
+            mBuilder.setGroup(NOTIFY_GROUP)
+                    .setSortKey(String.format(Locale.ROOT, "%04d", count - 1 - i));
+            post(mNotifyMgr, cv.getAsInteger(FeedContract.Feeds._ID), mBuilder);
         }
+
+        String title = count + " " + _ctx.getString(R.string.newFeeds);
+        if (count > children) {
+            inbox.setSummaryText(_ctx.getString(R.string.moreFeeds, count - children));
+        }
+        inbox.setBigContentTitle(title);
+        NotificationCompat.Builder mBuilder = new NotificationCompat.Builder(_ctx);
+        mBuilder.setContentTitle(title)
+                .setContentText(_newFeeds.get(count - 1).getAsString(FeedContract.Feeds.COLUMN_Title))
+                .setContentIntent(pi)
+                .setStyle(inbox)
+                .setNumber(count)
+                .setSmallIcon(R.drawable.logo_sw)
+                .setLargeIcon(appIcon())
+                .setGroup(NOTIFY_GROUP)
+                .setGroupSummary(true)
+                .setSound(notifySound());
+        setLights(mBuilder);
+        post(mNotifyMgr, SUMMARY_NOTIFY_ID, mBuilder);
     }
 
     public void error(String title, String msg) {
         NotificationCompat.Builder mBuilder = new NotificationCompat.Builder(_ctx);
-        Bitmap largeIcon = BitmapFactory.decodeResource(_ctx.getResources(), R.mipmap.errorhint);
+        if (_errorIcon == null) {
+            _errorIcon = BitmapFactory.decodeResource(_ctx.getResources(), R.mipmap.errorhint);
+        }
         mBuilder.setContentTitle(title)
                 .setContentText(msg)
                 .setTicker(msg)
                 .setSmallIcon(R.drawable.logo_sw)
-                .setLargeIcon(largeIcon)
+                .setLargeIcon(_errorIcon)
                 .setVibrate(new long[]{2000})
                 .setPriority(Notification.PRIORITY_HIGH);
         Notification noti = mBuilder.build();
@@ -398,23 +592,27 @@ public class Refresher {
         mNotifyMgr.notify(42, noti);
     }
 
-    private void notify(ContentValues cv, PendingIntent pi, Uri sound, boolean isHeadUp) {
-        String body = FeedContract.removeHtml(cv.getAsString(FeedContract.Feeds.COLUMN_Body));
-        String title= FeedContract.removeHtml(cv.getAsString(FeedContract.Feeds.COLUMN_Title));
+    /**
+     * Die Notifikation eines Feeds, noch ohne Sound und LED. Nur hier wird ein
+     * Vorschaubild aus dem {@link ImageStore} dekodiert.
+     */
+    private NotificationCompat.Builder builder(ContentValues cv, PendingIntent pi, boolean isHeadUp) {
+        String body = cv.getAsString(FeedContract.Feeds.COLUMN_Text);
+        String preview = cv.getAsString(FeedContract.Feeds.COLUMN_Preview);
+        String title= cv.getAsString(FeedContract.Feeds.COLUMN_Title);
         String link = cv.getAsString(FeedContract.Feeds.COLUMN_Link);
-        Bitmap largeIcon = FeedContract.getImage(cv.getAsByteArray(FeedContract.Feeds.COLUMN_Image));
+        Bitmap largeIcon = ImageStore.ME(_ctx).load(cv.getAsString(FeedContract.Feeds.COLUMN_ImageKey));
 
         NotificationCompat.Builder mBuilder = new NotificationCompat.Builder(_ctx);
 
         NotificationCompat.BigTextStyle bigStyle = new NotificationCompat.BigTextStyle();
         bigStyle.bigText(body);
 
-        if (largeIcon == null)
-            largeIcon = BitmapFactory.decodeResource(_ctx.getResources(), R.mipmap.ic_launcher);
+        if (largeIcon == null) largeIcon = appIcon();
 
         mBuilder.setContentTitle(title)
-                .setContentText(body)
-                .setTicker(body)
+                .setContentText(preview)
+                .setTicker(preview)
                 .setContentIntent(pi)
                 .setStyle(bigStyle)
                 .setSmallIcon(R.drawable.logo_sw)
@@ -433,9 +631,10 @@ public class Refresher {
         } else {
             mBuilder.setPriority(Notification.PRIORITY_HIGH);
         }
+        return mBuilder;
+    }
 
-        if (sound != null) mBuilder.setSound(sound);
-
+    private void setLights(NotificationCompat.Builder mBuilder) {
         switch (_notifyType) {
             case 1:
                 mBuilder.setLights(_notifyColor, 1000, 0);
@@ -448,12 +647,26 @@ public class Refresher {
                 break;
             default:
         }
+    }
 
+    private static void post(NotificationManager mNotifyMgr, int id, NotificationCompat.Builder mBuilder) {
         Notification noti = mBuilder.build();
         noti.flags |= Notification.FLAG_AUTO_CANCEL;
-        NotificationManager mNotifyMgr =
-                (NotificationManager) _ctx.getSystemService(Context.NOTIFICATION_SERVICE);
-        mNotifyMgr.notify(cv.getAsInteger(FeedContract.Feeds._ID), noti);
+        mNotifyMgr.notify(id, noti);
+    }
+
+    private Uri notifySound() {
+        return Uri.parse("android.resource://" + ViboraApp.getContextOfApplication().getPackageName() + "/" + R.raw.notifysnd);
+    }
+
+    /**
+     * wird nur einmal dekodiert
+     */
+    private Bitmap appIcon() {
+        if (_appIcon == null) {
+            _appIcon = BitmapFactory.decodeResource(_ctx.getResources(), R.mipmap.ic_launcher);
+        }
+        return _appIcon;
     }
 
 }
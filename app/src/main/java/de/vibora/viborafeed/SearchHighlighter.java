@@ -0,0 +1,83 @@
+package de.vibora.viborafeed;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/**
+ * Hebt die Wörter der Suche in einem Text hervor (fett und in
+ * {@link ViboraApp.Config#SEARCH_HINT_COLOR}).
+ * <p>
+ * Die Eingabe wird einmal pro Suche so zerlegt wie für die FTS Abfrage
+ * ({@link FeedContract#searchTerms(String)}) und in Kleinbuchstaben gebracht. Jedes Wort
+ * wird für sich gesucht, ohne Groß- und Kleinschreibung zu beachten. Es gibt keine Regex
+ * und kein html, die Treffer bekommen ihre Spans direkt.
+ * </p>
+ */
+public class SearchHighlighter {
+    private final String _query;
+    private final String[] _terms;
+    private final Locale _locale;
+    private final int _color;
+
+    /**
+     * @param query die Eingabe des Users
+     */
+    public SearchHighlighter(String query) {
+        _query = query;
+        _locale = Locale.getDefault();
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        for (String term : FeedContract.searchTerms(query)) terms.add(term.toLowerCase(_locale));
+        _terms = terms.toArray(new String[terms.size()]);
+        _color = Color.parseColor(ViboraApp.Config.SEARCH_HINT_COLOR);
+    }
+
+    /**
+     * @return die Eingabe, für die der Highlighter gebaut wurde
+     */
+    public String getQuery() {
+        return _query;
+    }
+
+    /**
+     * @param msg der Text
+     * @return der Text mit hervorgehobenen Treffern, oder msg, wenn es keinen gibt
+     */
+    public CharSequence highlight(String msg) {
+        if (msg == null || _terms.length == 0) return msg;
+        String folded = msg.toLowerCase(_locale);
+        // e.g. the dotted I gets longer: then the offsets in folded do not fit msg
+        if (folded.length() != msg.length()) folded = null;
+        SpannableString text = null;
+        for (String term : _terms) {
+            int len = term.length();
+            int i = indexOf(msg, folded, term, 0);
+            while (i >= 0) {
+                if (text == null) text = new SpannableString(msg);
+                text.setSpan(new StyleSpan(Typeface.BOLD), i, i + len, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                text.setSpan(new ForegroundColorSpan(_color), i, i + len, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                i = indexOf(msg, folded, term, i + len);
+            }
+        }
+        return text == null ? msg : text;
+    }
+
+    /**
+     * @param folded msg in Kleinbuchstaben oder null, wenn es nicht gleich lang ist
+     * @return die Stelle von term in msg ab from oder -1
+     */
+    private static int indexOf(String msg, String folded, String term, int from) {
+        if (folded != null) return folded.indexOf(term, from);
+        int last = msg.length() - term.length();
+        for (int i = from; i <= last; i++) {
+            if (msg.regionMatches(true, i, term, 0, term.length())) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,200 @@
+package de.vibora.viborafeed;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Holt die Vorschaubilder neuer Feeds, nachdem ihre Zeilen schon in der DB sind.
+ * Die Bilder werden parallel mit max {@link ViboraApp.Config#MAX_IMAGE_WORKERS} Threads
+ * und max {@link ViboraApp.Config#MAX_CONNECTIONS_PER_HOST} Verbindungen pro Host geholt.
+ * Was nach {@link ViboraApp.Config#IMAGE_TIMEOUT_SEC} sec nicht da ist, wird abgebrochen.
+ * Die fertigen Bilder werden mit einem Batch in die Zeilen eingetragen.
+ *
+ * @see Refresher#fetchThumbnails()
+ */
+public class ThumbnailFetcher {
+    private final Context _ctx;
+    private final ImageStore _store;
+    private final HostLimiter _limiter;
+
+    /**
+     * Url -&gt; die Zeilen (mit _ID), die dieses Bild nutzen
+     */
+    private final HashMap<String, ArrayList<ContentValues>> _pending = new HashMap<>();
+
+    public ThumbnailFetcher(Context ctx) {
+        _ctx = ctx;
+        _store = ImageStore.ME(ctx);
+        _limiter = new HostLimiter(ViboraApp.Config.MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Merkt sich eine eingefügte Zeile, deren Bild noch fehlt.
+     *
+     * @param url die Url des Bildes
+     * @param row die Werte der Zeile inkl. _ID
+     */
+    public void add(String url, ContentValues row) {
+        ArrayList<ContentValues> rows = _pending.get(url);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            _pending.put(url, rows);
+        }
+        rows.add(row);
+    }
+
+    /**
+     * Nimmt die Bilder der gegebenen Zeilen aus diesem Fetcher heraus, z.B. die der Feeds,
+     * die gleich eine eigene Notifikation bekommen.
+     *
+     * @param rows Zeilen, die vorher mit {@link #add(String, ContentValues)} kamen
+     * @return ein neuer Fetcher nur mit diesen Bildern
+     */
+    public ThumbnailFetcher take(Collection<ContentValues> rows) {
+        Set<ContentValues> wanted = Collections.newSetFromMap(new IdentityHashMap<ContentValues, Boolean>());
+        wanted.addAll(rows);
+        ThumbnailFetcher taken = new ThumbnailFetcher(_ctx);
+        Iterator<Map.Entry<String, ArrayList<ContentValues>>> it = _pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ArrayList<ContentValues>> entry = it.next();
+            for (ContentValues row : entry.getValue()) {
+                if (!wanted.contains(row)) continue;
+                taken._pending.put(entry.getKey(), entry.getValue());
+                it.remove();
+                break;
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Übernimmt die Bilder, die in other noch offen sind (z.B. nach einem Timeout).
+     *
+     * @param other ein anderer Fetcher
+     */
+    public void addAll(ThumbnailFetcher other) {
+        for (Map.Entry<String, ArrayList<ContentValues>> entry : other._pending.entrySet()) {
+            for (ContentValues row : entry.getValue()) add(entry.getKey(), row);
+        }
+        other._pending.clear();
+    }
+
+    /**
+     * Holt alle Bilder mit dem Timeout {@link ViboraApp.Config#IMAGE_TIMEOUT_SEC}.
+     *
+     * @return Anzahl der Bilder, die geholt werden sollten
+     * @see #run(long)
+     */
+    public int run() {
+        return run(ViboraApp.Config.IMAGE_TIMEOUT_SEC);
+    }
+
+    /**
+     * Holt alle Bilder und trägt den Schlüssel in die Zeilen (DB und ContentValues) ein.
+     * Blockiert, bis alle Bilder da sind oder der Timeout erreicht ist. Bilder, die bis
+     * dahin nicht da sind, bleiben offen und können mit {@link #addAll(ThumbnailFetcher)}
+     * an einen anderen Fetcher gehen.
+     *
+     * @param timeoutSec max Wartezeit in sec
+     * @return Anzahl der Bilder, die geholt werden sollten
+     */
+    public int run(long timeoutSec) {
+        if (_pending.isEmpty()) return 0;
+        int workers = Math.min(_pending.size(), ViboraApp.Config.MAX_IMAGE_WORKERS);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ArrayList<String> urls = new ArrayList<>(_pending.keySet());
+        List<Future<String>> futures = new ArrayList<>();
+
+        for (final String url : urls) {
+            futures.add(pool.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    _limiter.acquire(url);
+                    try {
+                        return download(url);
+                    } finally {
+                        _limiter.release(url);
+                    }
+                }
+            }));
+        }
+        pool.shutdown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSec);
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        ArrayList<String> timedOut = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            Future<String> future = futures.get(i);
+            String key = null;
+            try {
+                long left = Math.max(0L, deadline - System.nanoTime());
+                key = future.get(left, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                Log.w(ViboraApp.TAG, "Timeout: " + urls.get(i));
+                future.cancel(true);
+                timedOut.add(urls.get(i));
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (key == null) continue;
+            for (ContentValues row : _pending.get(urls.get(i))) {
+                row.put(FeedContract.Feeds.COLUMN_ImageKey, key);
+                ops.add(ContentProviderOperation
+                        .newUpdate(Uri.withAppendedPath(
+                                FeedContentProvider.CONTENT_URI,
+                                row.getAsString(FeedContract.Feeds._ID)
+                        ))
+                        .withValue(FeedContract.Feeds.COLUMN_ImageKey, key)
+                        .build());
+            }
+        }
+        _pending.keySet().retainAll(timedOut);
+        if (ops.isEmpty()) return urls.size();
+
+        try {
+            _ctx.getContentResolver().applyBatch(FeedContentProvider.AUTHORITY, ops);
+        } catch (RemoteException | OperationApplicationException | SQLiteException e) {
+            e.printStackTrace();
+        }
+        return urls.size();
+    }
+
+    /**
+     * @return der Schlüssel im {@link ImageStore} oder null
+     */
+    private String download(String url) {
+        String key = ImageStore.keyOf(url);
+        if (_store.has(key)) return key;
+        if (Thread.currentThread().isInterrupted()) return null;
+        byte[] bytes = FeedContract.getImage(_ctx, url);
+        if (bytes == null || Thread.currentThread().isInterrupted()) return null;
+        return _store.put(key, bytes) ? key : null;
+    }
+}
@@ -0,0 +1,108 @@
+package de.vibora.viborafeed;
+
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Lädt die Vorschaubilder der Liste aus dem {@link ImageStore} außerhalb des UI Threads.
+ * Dekodierte Bilder liegen in einem LRU Cache (nach Zeilen-ID), dessen Größe nach
+ * Bytes begrenzt ist. Wird ein View recycled, bevor sein Bild fertig ist, wird der alte
+ * Auftrag abgebrochen.
+ *
+ * @see FeedAdapter
+ */
+public class ThumbnailLoader {
+    /**
+     * Anteil am Heap der App, den der Cache max nutzen darf
+     */
+    private static final int CACHE_FRACTION = 16;
+
+    private static final Executor DECODER = Executors.newFixedThreadPool(2);
+
+    private final ImageStore _store;
+    private final LruCache<Long, Bitmap> _cache;
+
+    public ThumbnailLoader(ImageStore store) {
+        _store = store;
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / CACHE_FRACTION);
+        _cache = new LruCache<Long, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(Long id, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight() / 1024 + 1;
+            }
+        };
+    }
+
+    /**
+     * Setzt das Bild der Zeile id in iv. Ist es nicht im Cache, wird iv erst geleert und
+     * das Bild im Hintergrund geladen.
+     *
+     * @param id die Zeilen-ID
+     * @param key der Schlüssel im {@link ImageStore}
+     * @param iv der ImageView
+     */
+    public void load(long id, String key, ImageView iv) {
+        Bitmap bmp = _cache.get(id);
+        Task old = (Task) iv.getTag();
+        if (old != null) {
+            if (bmp == null && old._id == id) return;
+            old.cancel(true);
+            iv.setTag(null);
+        }
+        if (bmp != null) {
+            iv.setImageBitmap(bmp);
+            return;
+        }
+        iv.setImageBitmap(null);
+        Task task = new Task(id, key, iv);
+        iv.setTag(task);
+        task.executeOnExecutor(DECODER);
+    }
+
+    /**
+     * Bricht den Auftrag von iv ab, z.B. wenn die Zeile kein Bild hat.
+     *
+     * @param iv der ImageView
+     */
+    public void cancel(ImageView iv) {
+        Task old = (Task) iv.getTag();
+        if (old != null) old.cancel(true);
+        iv.setTag(null);
+    }
+
+    public void clear() {
+        _cache.evictAll();
+    }
+
+    private class Task extends AsyncTask<Void, Void, Bitmap> {
+        private final long _id;
+        private final String _key;
+        private final ImageView _iv;
+
+        Task(long id, String key, ImageView iv) {
+            _id = id;
+            _key = key;
+            _iv = iv;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... voids) {
+            if (isCancelled()) return null;
+            return _store.load(_key);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            if (bitmap != null) _cache.put(_id, bitmap);
+            // the view could show an other row now
+            if (_iv.getTag() != this) return;
+            _iv.setTag(null);
+            _iv.setImageBitmap(bitmap);
+        }
+    }
+}
@@ -8,7 +8,9 @@ import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatDelegate;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * Der Einstiegspunkt des Launchers.
@@ -47,22 +49,128 @@ public class ViboraApp extends Application {
         public static final int DEFAULT_NIGHT_STOP = 6;
         public static final String SEARCH_HINT_COLOR = "#FFAA00";
 
+        /**
+         * so viele der neuen Feeds bekommen eine eigene Notifikation, die übrigen stehen
+         * nur in der Zusammenfassung
+         */
+        public static final int MAX_CHILD_NOTIFICATIONS = 5;
+
         /**
          * im Feed Text von Vibora ist leider ein total überflüssiger Inhalt enthalten,
          * der hinter dem Wort {@value #DEFAULT_lastRssWord} abgeschnitten werden muss.
          */
         public static final String DEFAULT_lastRssWord = "weiterlesen";
 
+        /**
+         * mehr Zeichen Text werden aus dem html eines Feeds nicht gelesen
+         */
+        public static final int MAX_TEXT_LENGTH = 20000;
+
         /**
          * sets a static image size to {@value #MAX_IMG_WIDTH}
          */
         public static final int MAX_IMG_WIDTH = 120;
         public static final float IMG_ROUND = 20f;
         /**
-         * sollte eine Verbindung nicht zu sande kommen, wird ein neuer
-         * Alarm in {@value #RETRYSEC_AFTER_OFFLINE} sec ausgelöst
+         * Schlägt ein Refresh fehl, wird er nach {@value #RETRY_BACKOFF_SEC} sec erneut
+         * versucht, danach jeweils mit doppelter Wartezeit (exponential backoff)
+         */
+        public static final long RETRY_BACKOFF_SEC = 30L;
+
+        /**
+         * so oft wird ein fehlgeschlagener Refresh ohne JobScheduler (vor API 21) wiederholt,
+         * danach wartet er auf den nächsten regulären Alarm
+         */
+        public static final int MAX_RETRIES = 5;
+
+        /**
+         * so viele Quellen werden gleichzeitig geholt
          */
-        public static final long RETRYSEC_AFTER_OFFLINE = 75L;
+        public static final int MAX_REFRESH_WORKERS = 4;
+        public static final int MAX_CONNECTIONS_PER_HOST = 2;
+        public static final int CONNECT_TIMEOUT_MS = 15000;
+        public static final int READ_TIMEOUT_MS = 30000;
+        /**
+         * spätestens nach {@value #SOURCE_TIMEOUT_SEC} sec wird eine Quelle aufgegeben
+         */
+        public static final long SOURCE_TIMEOUT_SEC = 90L;
+
+        /**
+         * so viele Vorschaubilder werden gleichzeitig geholt
+         */
+        public static final int MAX_IMAGE_WORKERS = 4;
+        public static final int IMAGE_READ_TIMEOUT_MS = 15000;
+        /**
+         * größere Bilder werden nicht geladen
+         */
+        public static final int MAX_IMAGE_BYTES = 4 * 1024 * 1024;
+        /**
+         * nach {@value #IMAGE_TIMEOUT_SEC} sec werden die restlichen Bilder aufgegeben
+         */
+        public static final long IMAGE_TIMEOUT_SEC = 60L;
+        /**
+         * so lange warten die Notifikationen max auf ihre Vorschaubilder
+         */
+        public static final long NOTIFY_IMAGE_TIMEOUT_SEC = 5L;
+
+        /**
+         * so viele keep-alive Verbindungen hält der {@link HttpClient} offen
+         * (Feeds und Bilder gleichzeitig)
+         */
+        public static final int MAX_POOLED_CONNECTIONS = MAX_REFRESH_WORKERS + MAX_IMAGE_WORKERS;
+
+        /**
+         * Größe des http Caches auf der Platte
+         */
+        public static final long HTTP_CACHE_BYTES = 10L * 1024 * 1024;
+
+        /**
+         * die Liste lädt Seiten mit {@value #PAGE_SIZE} Feeds, max {@value #MAX_PAGES}
+         * Seiten sind gleichzeitig geladen
+         */
+        public static final int PAGE_SIZE = 50;
+        public static final int MAX_PAGES = 4;
+        /**
+         * so viele Zeilen vor dem Ende des Fensters wird schon die nächste Seite geladen
+         */
+        public static final int PREFETCH_ROWS = 15;
+
+        /**
+         * so viele Zeilen behält die Tabelle mit den Zeiten der Refreshs
+         */
+        public static final int MAX_METRICS_ROWS = 5000;
+
+        /**
+         * die Wartung der DB ({@link DbMaintenance}) läuft etwa alle
+         * {@value #MAINTENANCE_INTERVAL_HOURS} Stunden und löscht/ändert je Statement max
+         * {@value #MAINTENANCE_CHUNK_ROWS} Zeilen bzw. gibt max
+         * {@value #VACUUM_CHUNK_PAGES} freie Seiten der Datei zurück
+         */
+        public static final int MAINTENANCE_INTERVAL_HOURS = 24;
+        public static final int MAINTENANCE_CHUNK_ROWS = 200;
+        public static final int VACUUM_CHUNK_PAGES = 256;
+        /**
+         * ein Vorschaubild ohne Feed wird erst nach dieser Zeit gelöscht (ein laufender
+         * Refresh speichert das Bild vor dem Feed)
+         */
+        public static final long UNUSED_THUMB_MIN_AGE_HOURS = 24L;
+    }
+
+    /**
+     * Liefert alle Quellen, die beim Refresh geholt werden sollen.
+     * Quellen ohne URL (z.B. kein zusätzlicher Feed eingestellt) fehlen in der Liste.
+     *
+     * @param pref die SharedPreferences
+     * @return die Quellen
+     */
+    public static List<FeedSource> getSources(SharedPreferences pref) {
+        List<FeedSource> sources = new ArrayList<>();
+        sources.add(new FeedSource(Source1.path, Source1.expunge, Source1.id));
+        String rssurl2 = pref.getString("rss_url", Source2.path);
+        if (!rssurl2.equals("")) {
+            sources.add(new FeedSource(rssurl2, Source2.expunge, Source2.id));
+        }
+        return sources;
     }
 
     public static Alarm alarm = null;
@@ -89,6 +197,7 @@ public class ViboraApp extends Application {
             mPreferences.edit().putInt("nightmode_use_stop", Config.DEFAULT_NIGHT_STOP).commit();
         }
 
+        HttpClient.ME(this);
         if (alarm == null) alarm = new Alarm();
     }
 
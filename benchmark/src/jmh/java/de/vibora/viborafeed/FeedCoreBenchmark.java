@@ -0,0 +1,139 @@
+package de.vibora.viborafeed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misst die Schritte eines Refresh ohne Netz und Datenbank: parsen, html zu Text,
+ * Datum, Blacklist und Dedup, jeweils für einen ganzen Feed mit {@link #items} Items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FeedCoreBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int items;
+
+    /**
+     * die Vorgabe aus den Einstellungen der App
+     */
+    private static final String BLACKLIST = "DEG,Kader,DEL,enalty,pielfeld,DFB,ockey,Rennfahr,"
+            + "Boxwelt,edallie,NBA,EM,WM,Borussia,Fortuna,Basket,Tennis,Boxer,rainer,VfC,"
+            + "Fußball,Wasserball,Handball,sport,Sport,FC ,Spieltag,Bundesliga,ennbahn,"
+            + "eltmeister,UEFA,League";
+
+    private byte[] _feed;
+    private List<FeedItem> _parsed;
+    private BlacklistMatcher _blacklist;
+
+    /**
+     * die Hälfte der Items ist schon "in der DB"
+     */
+    private FeedDedup.KeyStore _store;
+
+    @Setup
+    public void setup() throws Exception {
+        _feed = SyntheticFeed.rss(items);
+        _parsed = parse();
+        _blacklist = BlacklistMatcher.fromCsv(BLACKLIST);
+
+        final HashSet<String> stored = new HashSet<>();
+        for (int i = 0; i < _parsed.size(); i += 2) stored.add(FeedDedup.key(_parsed.get(i)));
+        _store = new FeedDedup.KeyStore() {
+            @Override
+            public Collection<String> allKeys() {
+                return stored;
+            }
+
+            @Override
+            public Collection<String> storedKeys(List<String> keys) {
+                ArrayList<String> result = new ArrayList<>();
+                for (String key : keys) {
+                    if (stored.contains(key)) result.add(key);
+                }
+                return result;
+            }
+        };
+    }
+
+    private List<FeedItem> parse() throws Exception {
+        final ArrayList<FeedItem> result = new ArrayList<>(items);
+        FeedParser.parse(new ByteArrayInputStream(_feed), Integer.MAX_VALUE, new FeedParser.ItemListener() {
+            @Override
+            public boolean onItem(FeedItem item) {
+                result.add(item);
+                return true;
+            }
+        });
+        return result;
+    }
+
+    @Benchmark
+    public List<FeedItem> parseFeed() throws Exception {
+        return parse();
+    }
+
+    @Benchmark
+    public void htmlToText(Blackhole bh) {
+        for (FeedItem item : _parsed) {
+            bh.consume(HtmlText.toText(item.description, "weiterlesen"));
+        }
+    }
+
+    @Benchmark
+    public void parseDates(Blackhole bh) {
+        for (FeedItem item : _parsed) {
+            bh.consume(FeedDate.parse(item.pubDate));
+        }
+    }
+
+    @Benchmark
+    public void blacklist(Blackhole bh) {
+        for (FeedItem item : _parsed) {
+            String term = _blacklist.find(item.title);
+            if (term == null) term = _blacklist.find(item.description);
+            bh.consume(term);
+        }
+    }
+
+    /**
+     * Ein neuer FeedDedup pro Aufruf, also inkl. Aufbau des Bloom-Filters
+     */
+    @Benchmark
+    public List<FeedItem> dedup() {
+        return new FeedDedup(_store).filterNew(_parsed);
+    }
+
+    /**
+     * Zum Vergleich mit {@link #blacklist(Blackhole)}: die alte Schleife mit contains()
+     */
+    @Benchmark
+    public void blacklistContains(Blackhole bh) {
+        String[] terms = BLACKLIST.split(",");
+        for (FeedItem item : _parsed) {
+            boolean found = false;
+            for (String term : terms) {
+                if (item.description.contains(term) || item.title.contains(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            bh.consume(found);
+        }
+    }
+}
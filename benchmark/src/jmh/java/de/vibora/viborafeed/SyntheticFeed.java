@@ -0,0 +1,76 @@
+package de.vibora.viborafeed;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Erzeugt einen RSS Feed mit n Items, der einem echten Nachrichten-Feed ähnelt:
+ * html im description, ein Bild, ein "weiterlesen" Link, Entities und Umlaute.
+ * Der Zufall hat einen festen Seed, damit jeder Lauf dieselben Daten hat.
+ */
+public final class SyntheticFeed {
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] WORDS = {
+            "Stadt", "Rat", "beschließt", "neue", "Straße", "für", "Radfahrer", "und",
+            "Fußgänger", "Polizei", "meldet", "Unfall", "auf", "der", "Autobahn", "Wetter",
+            "Sonne", "Regen", "Konzert", "im", "Park", "Schule", "Kinder", "Markt", "Preise",
+            "&amp;", "&quot;Zitat&quot;", "&#228;hnlich", "Sport", "Kultur", "Wirtschaft"
+    };
+
+    private SyntheticFeed() {}
+
+    /**
+     * @param items Anzahl der Items
+     * @return der Feed als UTF-8
+     */
+    public static byte[] rss(int items) {
+        Random rnd = new Random(42);
+        SimpleDateFormat rfc822 = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+        rfc822.setTimeZone(TimeZone.getTimeZone("Europe/Berlin"));
+        long now = System.currentTimeMillis();
+
+        StringBuilder sb = new StringBuilder(items * 1200);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<rss version=\"2.0\" xmlns:content=\"http://purl.org/rss/1.0/modules/content/\"");
+        sb.append(" xmlns:media=\"http://search.yahoo.com/mrss/\"><channel>\n");
+        sb.append("<title>Synthetic</title><link>http://example.org/</link>\n");
+        for (int i = 0; i < items; i++) {
+            // newest first, one item every 10 minutes
+            Date date = new Date(now - i * 10 * 60 * 1000L);
+            sb.append("<item>\n");
+            sb.append("<title>").append(words(rnd, 8)).append(" ").append(i).append("</title>\n");
+            sb.append("<link>http://example.org/news/").append(i).append(".html</link>\n");
+            sb.append("<guid isPermaLink=\"false\">urn:synthetic:").append(i).append("</guid>\n");
+            sb.append("<pubDate>").append(rfc822.format(date)).append("</pubDate>\n");
+            sb.append("<description><![CDATA[").append(html(rnd, i)).append("]]></description>\n");
+            sb.append("<media:thumbnail url=\"http://img.example.org/").append(i).append(".jpg\"/>\n");
+            sb.append("</item>\n");
+        }
+        sb.append("</channel></rss>\n");
+        return sb.toString().getBytes(UTF8);
+    }
+
+    /**
+     * @return ein description Body mit Bild, Absätzen und "weiterlesen" Link
+     */
+    public static String html(Random rnd, int i) {
+        return "<p><img src=\"http://img.example.org/" + i + ".jpg\" alt=\"\" /> "
+                + words(rnd, 40) + "</p>\n<p>" + words(rnd, 60) + "&nbsp;<b>"
+                + words(rnd, 3) + "</b></p><a href=\"http://example.org/news/" + i
+                + ".html\">weiterlesen</a>";
+    }
+
+    public static String words(Random rnd, int n) {
+        StringBuilder sb = new StringBuilder(n * 8);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
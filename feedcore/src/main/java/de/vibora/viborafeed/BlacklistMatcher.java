@@ -0,0 +1,171 @@
+package de.vibora.viborafeed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Sucht alle Begriffe der Blacklist gleichzeitig in einem Text (Aho-Corasick).
+ * Der Automat wird einmal aus der Liste gebaut, danach braucht {@link #find(String)}
+ * nur einen Durchlauf über den Text, egal wie viele Begriffe es gibt.
+ * Wie bisher mit String.contains() wird Groß-/Kleinschreibung beachtet.
+ * Genutzt vom Refresher der App.
+ */
+public class BlacklistMatcher {
+    private static final int ROOT = 0;
+
+    /**
+     * Kanten des Trie je Knoten: die Zeichen aufsteigend sortiert (binäre Suche) und an
+     * gleicher Stelle in _targets der Knoten dahinter. Primitive Arrays, damit
+     * {@link #find(String)} pro Zeichen nichts allokiert. null, wenn es keine Kante gibt.
+     */
+    private final char[][] _chars;
+    private final int[][] _targets;
+
+    /**
+     * Fehler-Link je Knoten: der Knoten des längsten echten Suffix
+     */
+    private final int[] _fail;
+
+    /**
+     * Index eines Begriffs, der an diesem Knoten endet, oder -1.
+     * Enthält nach dem Bau auch die Begriffe, die über den Fehler-Link enden.
+     */
+    private final int[] _out;
+
+    private final String[] _terms;
+    private int _nodes = 1;
+
+    /**
+     * @param terms die Begriffe, leere werden ignoriert
+     */
+    public BlacklistMatcher(String[] terms) {
+        ArrayList<String> list = new ArrayList<>();
+        for (String term : terms) {
+            if (term != null && term.length() > 0) list.add(term);
+        }
+        _terms = list.toArray(new String[list.size()]);
+
+        int maxNodes = 1;
+        for (String term : _terms) maxNodes += term.length();
+        _out = new int[maxNodes];
+        _fail = new int[maxNodes];
+        _chars = new char[maxNodes][];
+        _targets = new int[maxNodes][];
+        Arrays.fill(_out, -1);
+
+        int[] edges = new int[maxNodes];
+        for (int i = 0; i < _terms.length; i++) addTerm(i, edges);
+        for (int node = 0; node < _nodes; node++) {
+            if (_chars[node] == null) continue;
+            // exact length: binarySearch over the whole array
+            _chars[node] = Arrays.copyOf(_chars[node], edges[node]);
+            _targets[node] = Arrays.copyOf(_targets[node], edges[node]);
+        }
+        buildLinks();
+    }
+
+    /**
+     * Baut den Matcher aus einer komma-getrennten Liste (wie in den Einstellungen).
+     *
+     * @param csv z.B. "DEG,Kader,FC "
+     * @return der Matcher
+     */
+    public static BlacklistMatcher fromCsv(String csv) {
+        if (csv == null || csv.equals("")) return new BlacklistMatcher(new String[]{});
+        return new BlacklistMatcher(csv.split(","));
+    }
+
+    public boolean isEmpty() {
+        return _terms.length == 0;
+    }
+
+    /**
+     * @param text der Text
+     * @return der erste Begriff, der in text vorkommt, oder null
+     */
+    public String find(String text) {
+        if (text == null || _terms.length == 0) return null;
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            node = step(node, text.charAt(i));
+            if (_out[node] >= 0) return _terms[_out[node]];
+        }
+        return null;
+    }
+
+    private int step(int node, char c) {
+        while (true) {
+            int next = child(node, c);
+            if (next >= 0) return next;
+            if (node == ROOT) return ROOT;
+            node = _fail[node];
+        }
+    }
+
+    /**
+     * @return der Knoten hinter der Kante c oder -1
+     */
+    private int child(int node, char c) {
+        char[] chars = _chars[node];
+        if (chars == null) return -1;
+        int i = Arrays.binarySearch(chars, c);
+        return i < 0 ? -1 : _targets[node][i];
+    }
+
+    /**
+     * @param edges Anzahl der Kanten je Knoten, solange die Arrays noch Platz haben
+     */
+    private void addTerm(int index, int[] edges) {
+        String term = _terms[index];
+        int node = ROOT;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            char[] chars = _chars[node];
+            int n = edges[node];
+            int pos = chars == null ? -1 : Arrays.binarySearch(chars, 0, n, c);
+            if (pos >= 0) {
+                node = _targets[node][pos];
+                continue;
+            }
+            pos = -pos - 1;
+            if (chars == null) {
+                _chars[node] = new char[2];
+                _targets[node] = new int[2];
+            } else if (n == chars.length) {
+                _chars[node] = Arrays.copyOf(chars, 2 * n);
+                _targets[node] = Arrays.copyOf(_targets[node], 2 * n);
+            }
+            // keep the edges sorted
+            System.arraycopy(_chars[node], pos, _chars[node], pos + 1, n - pos);
+            System.arraycopy(_targets[node], pos, _targets[node], pos + 1, n - pos);
+            _chars[node][pos] = c;
+            _targets[node][pos] = _nodes;
+            edges[node] = n + 1;
+            node = _nodes++;
+        }
+        // keep the first term if two are equal
+        if (_out[node] < 0) _out[node] = index;
+    }
+
+    /**
+     * Breitensuche über den Trie: ein Knoten bekommt seinen Fehler-Link erst, wenn alle
+     * kürzeren Knoten fertig sind.
+     */
+    private void buildLinks() {
+        int[] queue = new int[_nodes];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = ROOT;
+        while (head < tail) {
+            int node = queue[head++];
+            char[] chars = _chars[node];
+            if (chars == null) continue;
+            for (int k = 0; k < chars.length; k++) {
+                int child = _targets[node][k];
+                _fail[child] = (node == ROOT) ? ROOT : step(_fail[node], chars[k]);
+                if (_out[child] < 0) _out[child] = _out[_fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+}
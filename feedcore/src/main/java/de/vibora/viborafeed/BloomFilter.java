@@ -0,0 +1,72 @@
+package de.vibora.viborafeed;
+
+/**
+ * Ein einfacher Bloom-Filter für Strings.
+ * {@link #mightContain(String)} ist nie falsch negativ: liefert es false, wurde der
+ * String sicher nie mit {@link #put(String)} eingefügt.
+ *
+ * @see FeedDedup
+ */
+public class BloomFilter {
+    private final long[] _bits;
+    private final int _size;
+    private final int _hashes;
+    private int _count;
+
+    /**
+     * Legt einen Filter für ca. capacity Einträge mit ca. 1% falsch positiven an.
+     *
+     * @param capacity erwartete Anzahl an Einträgen
+     */
+    public BloomFilter(int capacity) {
+        // m = -n ln(p) / ln(2)^2 with p = 0.01  =>  ~9.6 bits per entry, k = 7
+        int bits = Math.max(64, capacity * 10);
+        _bits = new long[(bits + 63) / 64];
+        _size = _bits.length * 64;
+        _hashes = 7;
+    }
+
+    public void put(String s) {
+        int h1 = s.hashCode();
+        int h2 = fnv(s);
+        for (int i = 0; i < _hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % _size;
+            _bits[bit >>> 6] |= 1L << (bit & 63);
+        }
+        _count++;
+    }
+
+    public boolean mightContain(String s) {
+        int h1 = s.hashCode();
+        int h2 = fnv(s);
+        for (int i = 0; i < _hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % _size;
+            if ((_bits[bit >>> 6] & (1L << (bit & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Anzahl der mit {@link #put(String)} eingefügten Einträge
+     */
+    public int count() {
+        return _count;
+    }
+
+    /**
+     * @return Anzahl der Einträge, für die der Filter angelegt wurde
+     */
+    public int capacity() {
+        return _size / 10;
+    }
+
+    private static int fnv(String s) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        // an odd step size visits different bits for every hash round
+        return h | 1;
+    }
+}
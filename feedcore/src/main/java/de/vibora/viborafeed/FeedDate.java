@@ -0,0 +1,334 @@
+package de.vibora.viborafeed;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Liest und schreibt die Datumsangaben der Feeds.
+ * <p>
+ * {@link #parse(String)} liest RFC 822 (auch mit Namen als Zeitzone wie GMT, EST, MESZ),
+ * RFC 3339 / ISO 8601 und übliche kaputte Varianten (fehlender Wochentag, zweistellige
+ * Jahre, ausgeschriebene oder deutsche Monatsnamen, fehlende Sekunden oder Zeitzone).
+ * Das passiert Zeichen für Zeichen ohne SimpleDateFormat und ohne Objekte anzulegen,
+ * damit ist es auch ohne Synchronisation für mehrere Refresh-Threads sicher.
+ * </p><p>
+ * Das DB-Format {@value #DB_PATTERN} braucht die lokale Zeitzone, dafür hat jeder
+ * Thread sein eigenes SimpleDateFormat.
+ * </p>
+ */
+public final class FeedDate {
+
+    /**
+     * Ergebnis von {@link #parse(String)}, wenn der String kein Datum ist
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Die Datenbank will für DATETIME dieses Format
+     */
+    public static final String DB_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private static final String[] MONTHS = {
+            "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    /**
+     * deutsche Abkürzungen, die sich von den englischen unterscheiden
+     */
+    private static final String[] MONTHS_DE = {"mär", "mrz", "mai", "okt", "dez"};
+    private static final int[] MONTHS_DE_NUMBER = {3, 3, 5, 10, 12};
+
+    /**
+     * Zeitzonen mit Namen und ihr Abstand zu UTC in Minuten
+     */
+    private static final String[] ZONE_NAMES = {
+            "GMT", "UT", "UTC", "Z",
+            "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT",
+            "CET", "CEST", "MEZ", "MESZ", "BST", "EET", "EEST"
+    };
+    private static final int[] ZONE_OFFSETS = {
+            0, 0, 0, 0,
+            -300, -240, -360, -300, -420, -360, -480, -420,
+            60, 120, 60, 120, 60, 120, 180
+    };
+
+    /**
+     * größter Abstand einer Zeitzone zu UTC (+-18:00 wie bei java.time)
+     */
+    private static final int MAX_OFFSET_MINUTES = 18 * 60;
+
+    private static final ThreadLocal<SimpleDateFormat> DB_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(DB_PATTERN, Locale.ENGLISH);
+        }
+    };
+
+    private FeedDate() {}
+
+    /**
+     * @param millis ms seit 1970
+     * @return das Datum im Format der Datenbank (lokale Zeit)
+     */
+    public static String toDb(long millis) {
+        return DB_FORMAT.get().format(new Date(millis));
+    }
+
+    /**
+     * @param dbDate das Datum, wie es die Datenbank liefert
+     * @return ms seit 1970 oder {@link #INVALID}
+     */
+    public static long fromDb(String dbDate) {
+        if (dbDate == null) return INVALID;
+        try {
+            return DB_FORMAT.get().parse(dbDate).getTime();
+        } catch (ParseException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Liest das Datum eines Feeds (pubDate, dc:date).
+     *
+     * @param raw der String aus dem Feed
+     * @return ms seit 1970 oder {@link #INVALID}
+     */
+    public static long parse(String raw) {
+        if (raw == null) return INVALID;
+        int start = skipSpace(raw, 0);
+        if (start < raw.length() && isDigit(raw.charAt(start))) {
+            int digits = countDigits(raw, start);
+            if (digits == 4 && start + 4 < raw.length() && raw.charAt(start + 4) == '-') {
+                return parseIso(raw, start);
+            }
+        }
+        return parseRfc822(raw, start);
+    }
+
+    /**
+     * yyyy-MM-dd['T'|' ']HH:mm[:ss[.SSS]][Z|+hh:mm|+hhmm|+hh]
+     */
+    private static long parseIso(String s, int i) {
+        int n = s.length();
+        int year = readInt(s, i, 4);
+        i += 4;
+        if (i >= n || s.charAt(i) != '-') return INVALID;
+        i++;
+        int month = readInt(s, i, 2);
+        i += 2;
+        if (i >= n || s.charAt(i) != '-') return INVALID;
+        i++;
+        int day = readInt(s, i, 2);
+        i += 2;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) return INVALID;
+
+        int hour = 0, minute = 0, second = 0, millis = 0;
+        if (i < n && (s.charAt(i) == 'T' || s.charAt(i) == 't' || s.charAt(i) == ' ')) {
+            i++;
+            hour = readInt(s, i, 2);
+            i += 2;
+            if (i >= n || s.charAt(i) != ':') return INVALID;
+            i++;
+            minute = readInt(s, i, 2);
+            i += 2;
+            if (i < n && s.charAt(i) == ':') {
+                i++;
+                second = readInt(s, i, 2);
+                i += 2;
+                if (i < n && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+                    i++;
+                    int digits = countDigits(s, i);
+                    millis = readInt(s, i, Math.min(3, digits));
+                    for (int d = digits; d < 3; d++) millis *= 10;
+                    i += digits;
+                }
+            }
+            if (millis < 0) return INVALID;
+        }
+
+        int offset = 0;
+        i = skipSpace(s, i);
+        if (i < n) {
+            offset = readZone(s, i);
+            if (offset == Integer.MIN_VALUE) return INVALID;
+        }
+        if (!isValid(day, hour, minute, second, offset)) return INVALID;
+        return toMillis(year, month, day, hour, minute, second, offset) + millis;
+    }
+
+    /**
+     * [EEE,] d MMM yy[yy] HH:mm[:ss] [zone]
+     */
+    private static long parseRfc822(String s, int i) {
+        int n = s.length();
+        // optional day of week: letters up to ',' or space
+        if (i < n && Character.isLetter(s.charAt(i))) {
+            while (i < n && Character.isLetter(s.charAt(i))) i++;
+            if (i < n && (s.charAt(i) == ',' || s.charAt(i) == '.')) i++;
+            i = skipSpace(s, i);
+        }
+
+        int digits = countDigits(s, i);
+        if (digits < 1 || digits > 2) return INVALID;
+        int day = readInt(s, i, digits);
+        i = skipSpace(s, i + digits);
+        // "1. Mai" and "1-May-2016"
+        if (i < n && (s.charAt(i) == '.' || s.charAt(i) == '-')) i = skipSpace(s, i + 1);
+
+        int month = readMonth(s, i);
+        if (month < 0) return INVALID;
+        while (i < n && Character.isLetter(s.charAt(i))) i++;
+        if (i < n && (s.charAt(i) == '.' || s.charAt(i) == '-')) i++;
+        i = skipSpace(s, i);
+
+        digits = countDigits(s, i);
+        if (digits != 2 && digits != 4) return INVALID;
+        int year = readInt(s, i, digits);
+        if (digits == 2) year += (year < 50) ? 2000 : 1900;
+        i = skipSpace(s, i + digits);
+
+        int hour = 0, minute = 0, second = 0;
+        digits = countDigits(s, i);
+        if (digits == 1 || digits == 2) {
+            hour = readInt(s, i, digits);
+            i += digits;
+            if (i >= n || s.charAt(i) != ':') return INVALID;
+            i++;
+            digits = countDigits(s, i);
+            if (digits != 2) return INVALID;
+            minute = readInt(s, i, 2);
+            i += 2;
+            if (i < n && s.charAt(i) == ':') {
+                i++;
+                digits = countDigits(s, i);
+                if (digits != 2) return INVALID;
+                second = readInt(s, i, 2);
+                i += 2;
+            }
+        }
+
+        int offset = 0;
+        i = skipSpace(s, i);
+        if (i < n) {
+            offset = readZone(s, i);
+            // unknown zone names are taken as GMT, like most feed readers do
+            if (offset == Integer.MIN_VALUE) offset = 0;
+        }
+        if (!isValid(day, hour, minute, second, offset)) return INVALID;
+        return toMillis(year, month, day, hour, minute, second, offset);
+    }
+
+    /**
+     * Die gemeinsamen Grenzen beider Formate, damit z.B. 25:99 nicht still zu einem
+     * anderen Tag wird. Sekunde 60 ist eine Schaltsekunde.
+     */
+    private static boolean isValid(int day, int hour, int minute, int second, int offset) {
+        return day >= 1 && day <= 31
+                && hour >= 0 && hour <= 23
+                && minute >= 0 && minute <= 59
+                && second >= 0 && second <= 60
+                && Math.abs(offset) <= MAX_OFFSET_MINUTES;
+    }
+
+    /**
+     * @return Abstand zu UTC in Minuten oder Integer.MIN_VALUE
+     */
+    private static int readZone(String s, int i) {
+        int n = s.length();
+        char c = s.charAt(i);
+        if (c == '+' || c == '-') {
+            int sign = (c == '-') ? -1 : 1;
+            i++;
+            int digits = countDigits(s, i);
+            int hours, minutes = 0;
+            if (digits == 4) {
+                hours = readInt(s, i, 2);
+                minutes = readInt(s, i + 2, 2);
+            } else if (digits == 2 || digits == 1) {
+                hours = readInt(s, i, digits);
+                i += digits;
+                if (i < n && s.charAt(i) == ':' && countDigits(s, i + 1) == 2) {
+                    minutes = readInt(s, i + 1, 2);
+                }
+            } else {
+                return Integer.MIN_VALUE;
+            }
+            if (minutes > 59) return Integer.MIN_VALUE;
+            return sign * (hours * 60 + minutes);
+        }
+        int end = i;
+        while (end < n && Character.isLetter(s.charAt(end))) end++;
+        for (int z = 0; z < ZONE_NAMES.length; z++) {
+            String name = ZONE_NAMES[z];
+            if (name.length() == end - i && s.regionMatches(true, i, name, 0, name.length())) {
+                // "GMT+02:00"
+                if (end < n && (s.charAt(end) == '+' || s.charAt(end) == '-')) {
+                    int more = readZone(s, end);
+                    if (more != Integer.MIN_VALUE) return ZONE_OFFSETS[z] + more;
+                }
+                return ZONE_OFFSETS[z];
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return 1..12 oder -1
+     */
+    private static int readMonth(String s, int i) {
+        if (i + 3 > s.length()) return -1;
+        for (int m = 0; m < MONTHS.length; m++) {
+            if (s.regionMatches(true, i, MONTHS[m], 0, 3)) return m + 1;
+        }
+        for (int m = 0; m < MONTHS_DE.length; m++) {
+            if (s.regionMatches(true, i, MONTHS_DE[m], 0, 3)) return MONTHS_DE_NUMBER[m];
+        }
+        return -1;
+    }
+
+    /**
+     * Tage seit 1970 nach dem gregorianischen Kalender, ohne Calendar Objekt.
+     */
+    private static long toMillis(int year, int month, int day,
+                                 int hour, int minute, int second, int offsetMinutes) {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468L;
+        long seconds = days * 86400L + hour * 3600L + (minute - offsetMinutes) * 60L + second;
+        return seconds * 1000L;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int countDigits(String s, int i) {
+        int count = 0;
+        while (i + count < s.length() && isDigit(s.charAt(i + count))) count++;
+        return count;
+    }
+
+    /**
+     * @return die Zahl aus len Ziffern ab i oder -1
+     */
+    private static int readInt(String s, int i, int len) {
+        if (len <= 0 || i + len > s.length()) return -1;
+        int value = 0;
+        for (int k = i; k < i + len; k++) {
+            char c = s.charAt(k);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int skipSpace(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+}
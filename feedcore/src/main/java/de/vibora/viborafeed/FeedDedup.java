@@ -0,0 +1,185 @@
+package de.vibora.viborafeed;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Erkennt Items, die schon in der Datenbank sind, über einen stabilen Schlüssel
+ * (COLUMN_Key mit UNIQUE Index).
+ * Alle bekannten Schlüssel liegen zusätzlich in einem {@link BloomFilter}: was der Filter
+ * nicht kennt, ist sicher neu und braucht keine DB Abfrage. Nur die übrigen Schlüssel
+ * werden mit einer einzigen IN (...) Abfrage pro Feed geprüft.
+ * Woher die Schlüssel kommen, bestimmt der {@link KeyStore}.
+ */
+public class FeedDedup {
+    /**
+     * SQLite erlaubt max 999 Argumente pro Abfrage
+     */
+    public static final int MAX_SQL_ARGS = 500;
+    private static final int MIN_CAPACITY = 4096;
+
+    /**
+     * Die schon gespeicherten Schlüssel, z.B. die Spalte COLUMN_Key der Datenbank.
+     */
+    public interface KeyStore {
+        /**
+         * @return alle gespeicherten Schlüssel
+         */
+        Collection<String> allKeys();
+
+        /**
+         * @param keys max {@link #MAX_SQL_ARGS} Schlüssel
+         * @return die davon, die schon gespeichert sind
+         */
+        Collection<String> storedKeys(List<String> keys);
+    }
+
+    private final KeyStore _store;
+    private BloomFilter _known = null;
+
+    public FeedDedup(KeyStore store) {
+        _store = store;
+    }
+
+    /**
+     * Der Schlüssel eines Items ist seine &lt;guid&gt;. Fehlt diese, wird ein Hash des Links
+     * (notfalls des Titels) genommen.
+     *
+     * @param item das Item
+     * @return der Schlüssel
+     */
+    public static String key(FeedItem item) {
+        if (item.guid != null && item.guid.trim().length() > 0) {
+            return item.guid.trim();
+        }
+        return linkKey(item);
+    }
+
+    /**
+     * Der Schlüssel der Zeilen, die vor dem Schlüssel in der DB waren: die guid wurde nie
+     * gespeichert, daher zählen dort nur Link bzw. Titel.
+     *
+     * @param item das Item
+     * @return Hash des Links bzw. Titels
+     */
+    public static String linkKey(FeedItem item) {
+        if (item.link != null && item.link.trim().length() > 0) {
+            return "link:" + sha1(item.link.trim());
+        }
+        return "title:" + sha1(item.title == null ? "" : item.title);
+    }
+
+    /**
+     * @param s ein String
+     * @return SHA-1 des Strings als Hex-String
+     */
+    public static String sha1(String s) {
+        try {
+            return sha1(s.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // every java runtime has UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param bytes Daten
+     * @return SHA-1 der Daten als Hex-String
+     */
+    public static String sha1(byte[] bytes) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every java runtime has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return der alte Schlüssel ({@link #linkKey(FeedItem)}), wenn er sich von
+     * {@link #key(FeedItem)} unterscheidet, sonst null
+     */
+    private static String legacyKey(FeedItem item) {
+        String legacy = linkKey(item);
+        return legacy.equals(item.key) ? null : legacy;
+    }
+
+    /**
+     * Liefert die Items, deren Schlüssel noch nicht in der DB ist. Setzt dabei
+     * {@link FeedItem#key}. Doppelte Schlüssel innerhalb von items zählen nur einmal.
+     * Ein Item mit guid gilt auch dann als bekannt, wenn sein alter Schlüssel (aus der
+     * Migration alter Zeilen) in der DB ist.
+     *
+     * @param items die Items eines Feeds
+     * @return die neuen Items
+     */
+    public List<FeedItem> filterNew(List<FeedItem> items) {
+        List<FeedItem> fresh = new ArrayList<>();
+        List<FeedItem> maybe = new ArrayList<>();
+        HashSet<String> keys = new HashSet<>();
+
+        synchronized (this) {
+            if (_known == null) load();
+            for (FeedItem item : items) {
+                item.key = key(item);
+                if (!keys.add(item.key)) continue;
+                String legacy = legacyKey(item);
+                if (_known.mightContain(item.key) || (legacy != null && _known.mightContain(legacy))) {
+                    maybe.add(item);
+                } else {
+                    fresh.add(item);
+                }
+            }
+        }
+
+        List<String> check = new ArrayList<>(maybe.size());
+        for (FeedItem item : maybe) {
+            check.add(item.key);
+            String legacy = legacyKey(item);
+            if (legacy != null) check.add(legacy);
+        }
+        HashSet<String> stored = new HashSet<>();
+        for (int start = 0; start < check.size(); start += MAX_SQL_ARGS) {
+            stored.addAll(_store.storedKeys(
+                    check.subList(start, Math.min(check.size(), start + MAX_SQL_ARGS))
+            ));
+        }
+        for (FeedItem item : maybe) {
+            String legacy = legacyKey(item);
+            if (!stored.contains(item.key) && (legacy == null || !stored.contains(legacy))) {
+                fresh.add(item);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Merkt sich einen Schlüssel, der gerade in die DB geschrieben wurde.
+     *
+     * @param key der Schlüssel
+     */
+    public synchronized void remember(String key) {
+        if (_known == null) return;
+        _known.put(key);
+        // too full: rebuild a bigger one with the next filterNew()
+        if (_known.count() > _known.capacity()) _known = null;
+    }
+
+    private void load() {
+        Collection<String> keys = _store.allKeys();
+        _known = new BloomFilter(Math.max(MIN_CAPACITY, 2 * keys.size()));
+        for (String key : keys) _known.put(key);
+    }
+}
@@ -0,0 +1,38 @@
+package de.vibora.viborafeed;
+
+import java.util.Date;
+
+/**
+ * Ein einzelnes &lt;item&gt; eines Feeds, so wie es der {@link FeedParser} liefert.
+ * Es enthält nur die Tags, die für die Datenbank und die Bildsuche gebraucht werden.
+ *
+ * @see FeedParser
+ */
+public class FeedItem {
+    public String title;
+    public String description;
+    public String pubDate;
+    public String link;
+    public String content;
+    public String guid;
+
+    /**
+     * url Attribut von &lt;enclosure&gt;
+     */
+    public String enclosure;
+
+    /**
+     * url Attribut von &lt;media:thumbnail&gt;
+     */
+    public String thumbnail;
+
+    /**
+     * Das Datum aus {@link #pubDate} oder (bei Fehler) das jetzige Datum
+     */
+    public Date date;
+
+    /**
+     * Der Schlüssel zum Erkennen doppelter Items, wird von {@link FeedDedup} gesetzt
+     */
+    public String key;
+}
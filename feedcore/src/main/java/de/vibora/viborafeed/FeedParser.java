@@ -0,0 +1,153 @@
+package de.vibora.viborafeed;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Liest einen RSS Feed mit einem XmlPullParser in einem Durchgang aus dem Stream.
+ * Es wird kein Document aufgebaut: jedes &lt;item&gt; wird sofort als {@link FeedItem}
+ * an einen {@link ItemListener} gegeben und danach vergessen.
+ * Die Klasse braucht nur die XmlPull API (bei Android dabei, sonst z.B. kxml2).
+ */
+public class FeedParser {
+
+    /**
+     * Nach so vielen Items in Folge, die älter als expunge sind, wird das Parsen
+     * abgebrochen. Feeds sind normalerweise nach Datum absteigend sortiert - einzelne
+     * alte Items (z.B. angepinnt) sollen aber nicht den ganzen Feed verwerfen.
+     */
+    private static final int STALE_ITEMS_TO_STOP = 3;
+
+    public interface ItemListener {
+        /**
+         * Wird für jedes gelesene Item aufgerufen, das nicht älter als expunge ist.
+         *
+         * @param item das Item
+         * @return false, wenn das Parsen abgebrochen werden soll
+         */
+        boolean onItem(FeedItem item);
+    }
+
+    /**
+     * Parst den Stream und ruft für jedes Item den Listener auf.
+     * Der Stream wird hier nicht geschlossen.
+     *
+     * @param is der Stream des Feeds
+     * @param expunge anzahl an tagen, wie alt ein neuer feed max sein darf
+     * @param listener bekommt die Items
+     * @throws XmlPullParserException bei kaputtem XML
+     * @throws IOException bei Verbindungsproblemen
+     */
+    public static void parse(InputStream is, int expunge, ItemListener listener)
+            throws XmlPullParserException, IOException {
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(false);
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(is, null);
+
+        long now = new Date().getTime();
+        int stale = 0;
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG && "item".equals(parser.getName())) {
+                FeedItem item = readItem(parser);
+                long days = TimeUnit.DAYS.convert(now - item.date.getTime(), TimeUnit.MILLISECONDS);
+                if (days > expunge) {
+                    stale++;
+                    if (stale >= STALE_ITEMS_TO_STOP) return;
+                } else {
+                    stale = 0;
+                    if (!listener.onItem(item)) return;
+                }
+                event = parser.getEventType();
+                if (event == XmlPullParser.END_DOCUMENT) break;
+            }
+            event = parser.next();
+        }
+    }
+
+    /**
+     * Liest ein &lt;item&gt; bis zu seinem End-Tag. Wie früher bei den DOM Abfragen
+     * zählt jeweils das erste Vorkommen eines Tags innerhalb des Items.
+     */
+    private static FeedItem readItem(XmlPullParser parser) throws XmlPullParserException, IOException {
+        FeedItem item = new FeedItem();
+        int depth = parser.getDepth();
+        int event = parser.next();
+        while (!(event == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+            if (event == XmlPullParser.END_DOCUMENT) break;
+            if (event == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if ("enclosure".equals(name)) {
+                    if (item.enclosure == null) item.enclosure = parser.getAttributeValue(null, "url");
+                } else if ("media:thumbnail".equals(name)) {
+                    if (item.thumbnail == null) item.thumbnail = parser.getAttributeValue(null, "url");
+                } else if (isTextTag(name)) {
+                    setText(item, name, readText(parser));
+                    event = parser.getEventType();
+                    continue;
+                }
+            }
+            event = parser.next();
+        }
+        long millis = FeedDate.parse(item.pubDate);
+        // no or broken date: use date from now
+        if (millis == FeedDate.INVALID) millis = System.currentTimeMillis();
+        item.date = new Date(millis);
+        return item;
+    }
+
+    private static boolean isTextTag(String name) {
+        return "title".equals(name)
+                || "description".equals(name)
+                || "pubDate".equals(name)
+                || "dc:date".equals(name)
+                || "link".equals(name)
+                || "content:encoded".equals(name)
+                || "guid".equals(name);
+    }
+
+    private static void setText(FeedItem item, String name, String text) {
+        if ("title".equals(name)) {
+            if (item.title == null) item.title = text;
+        } else if ("description".equals(name)) {
+            if (item.description == null) item.description = text;
+        } else if ("pubDate".equals(name) || "dc:date".equals(name)) {
+            if (item.pubDate == null) item.pubDate = text;
+        } else if ("link".equals(name)) {
+            if (item.link == null) item.link = text;
+        } else if ("content:encoded".equals(name)) {
+            if (item.content == null) item.content = text;
+        } else if ("guid".equals(name)) {
+            if (item.guid == null) item.guid = text;
+        }
+    }
+
+    /**
+     * Sammelt Text und CDATA bis zum End-Tag des aktuellen Elements. Der Parser steht
+     * danach auf dem Event hinter dem End-Tag.
+     *
+     * @return der Text oder null, wenn das Element leer ist
+     */
+    private static String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = parser.getDepth();
+        StringBuilder sb = null;
+        int event = parser.next();
+        while (!(event == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+            if (event == XmlPullParser.END_DOCUMENT) break;
+            if (event == XmlPullParser.TEXT) {
+                if (sb == null) sb = new StringBuilder();
+                sb.append(parser.getText());
+            }
+            event = parser.next();
+        }
+        if (event != XmlPullParser.END_DOCUMENT) parser.next();
+        return sb == null ? null : sb.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package de.vibora.viborafeed;
+
+import java.util.HashMap;
+
+/**
+ * Macht aus dem html eines Feeds reinen Text, ohne Android (Html.fromHtml).
+ * Tags werden entfernt, HTML-Entities aufgelöst und Leerzeichen zusammengefasst.
+ */
+public final class HtmlText {
+
+    private static final HashMap<String, Character> ENTITIES = new HashMap<>();
+
+    static {
+        String[] names = {
+                "amp", "lt", "gt", "quot", "apos", "nbsp",
+                "auml", "ouml", "uuml", "Auml", "Ouml", "Uuml", "szlig",
+                "eacute", "egrave", "aacute", "agrave", "ccedil",
+                "euro", "hellip", "ndash", "mdash", "lsquo", "rsquo", "sbquo",
+                "ldquo", "rdquo", "bdquo", "laquo", "raquo",
+                "copy", "reg", "trade", "deg", "middot", "bull", "shy", "sect", "times"
+        };
+        char[] chars = {
+                '&', '<', '>', '"', '\'', '\u00A0',
+                'ä', 'ö', 'ü', 'Ä', 'Ö', 'Ü', 'ß',
+                'é', 'è', 'á', 'à', 'ç',
+                '€', '…', '–', '—', '‘', '’', '‚',
+                '“', '”', '„', '«', '»',
+                '©', '®', '™', '°', '·', '•', '\u00AD', '§', '×'
+        };
+        for (int i = 0; i < names.length; i++) ENTITIES.put(names[i], chars[i]);
+    }
+
+    private HtmlText() {}
+
+    /**
+     * Entfernt html code in einem String und löst HTML-Entities auf.
+     *
+     * @param html     string mit html code
+     * @param tailWord ab diesem Wort (z.B. ein "weiterlesen" Link) wird abgeschnitten, oder null
+     * @return result without html code
+     * @see #toText(String, String, int)
+     */
+    public static String toText(String html, String tailWord) {
+        return toText(html, tailWord, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Entfernt html code in einem String und löst HTML-Entities auf. Der String wird nur
+     * einmal gelesen (ohne Regex, kein Backtracking bei kaputten Tags) und der Text direkt
+     * in einen Puffer geschrieben: Tags und Kommentare werden zu einem Leerzeichen,
+     * Entities aufgelöst, Leerzeichen zusammengefasst.
+     * <p>
+     * Wie bisher gilt: ein Tag ohne &gt; endet am Zeilenumbruch, ein &gt; ohne Tag davor
+     * (Rest eines abgeschnittenen Tags) entfernt den Anfang seiner Zeile.
+     * </p>
+     *
+     * @param html      string mit html code
+     * @param tailWord  ab diesem Wort (z.B. ein "weiterlesen" Link) wird abgeschnitten, oder null
+     * @param maxLength sind so viele Zeichen Text erreicht, wird nicht weiter gelesen
+     * @return result without html code
+     */
+    public static String toText(String html, String tailWord, int maxLength) {
+        int end = html.length();
+        // get only "xxxxxxxxxx ..." without "weiterlesen" link
+        if (tailWord != null) {
+            int tail = html.indexOf(tailWord);
+            if (tail > 0) end = tail;
+        }
+
+        StringBuilder sb = new StringBuilder(Math.min(end, maxLength));
+        boolean space = false;
+        boolean strayGt = false;
+        // sb.length() at the start of the current line
+        int lineStart = 0;
+        // a '<' before this index has no end on its line: it is text
+        int textUntil = 0;
+        boolean openComment = false;
+
+        int i = 0;
+        while (i < end && sb.length() < maxLength) {
+            char c = html.charAt(i);
+            if (c == '<' && i >= textUntil) {
+                if (!openComment && html.startsWith("<!--", i)) {
+                    int close = html.indexOf("-->", i + 4);
+                    if (close >= 0 && close + 3 <= end) {
+                        space = sb.length() > 0;
+                        i = close + 3;
+                        continue;
+                    }
+                    // no comment after this one can be closed either
+                    openComment = true;
+                }
+                int next = tagEnd(html, i + 1, end);
+                if (next >= 0) {
+                    space = sb.length() > 0;
+                    i = next;
+                    continue;
+                }
+                textUntil = -next - 1;
+            } else if (c == '>' && !strayGt) {
+                strayGt = true;
+                sb.setLength(lineStart);
+                space = sb.length() > 0;
+                i++;
+                continue;
+            } else if (c == '&') {
+                int semi = -1;
+                int limit = Math.min(end, i + 11);
+                // entities are short: do not search the whole text for ';'
+                for (int j = i + 1; j < limit; j++) {
+                    if (html.charAt(j) == ';') {
+                        semi = j;
+                        break;
+                    }
+                }
+                int cp = semi < 0 ? -1 : codePoint(html, i + 1, semi);
+                if (cp >= 0) {
+                    if (Character.isWhitespace(cp) || cp == '\u00A0') {
+                        space = sb.length() > 0;
+                    } else {
+                        if (space) sb.append(' ');
+                        space = false;
+                        sb.appendCodePoint(cp);
+                    }
+                    i = semi + 1;
+                    continue;
+                }
+            }
+
+            if (isLineEnd(c)) {
+                lineStart = sb.length();
+                space = lineStart > 0;
+            } else if (Character.isWhitespace(c) || c == '\u00A0') {
+                space = sb.length() > 0;
+            } else {
+                if (space) sb.append(' ');
+                space = false;
+                sb.append(c);
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ein Tag endet mit &gt; oder, wenn es nicht geschlossen wird, am Zeilenumbruch.
+     *
+     * @param start das Zeichen nach dem &lt;
+     * @return die Stelle nach dem Tag oder -(Stelle, an der die Suche scheiterte)-1
+     */
+    private static int tagEnd(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '>' || c == '\n') return i + 1;
+            if (isLineEnd(c)) return -i - 1;
+        }
+        return -end - 1;
+    }
+
+    private static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Löst benannte (&amp;auml;) und numerische (&amp;#228; &amp;#xE4;) Entities auf.
+     * Unbekannte bleiben, wie sie sind.
+     *
+     * @param s Text mit Entities
+     * @return Text ohne Entities
+     */
+    public static String decodeEntities(String s) {
+        int amp = s.indexOf('&');
+        if (amp < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        int i = 0;
+        while (amp >= 0) {
+            sb.append(s, i, amp);
+            int semi = s.indexOf(';', amp + 1);
+            // entities are short: do not search the whole text for ';'
+            if (semi < 0 || semi - amp > 10) {
+                sb.append('&');
+                i = amp + 1;
+            } else {
+                int cp = codePoint(s, amp + 1, semi);
+                if (cp < 0) {
+                    sb.append('&');
+                    i = amp + 1;
+                } else {
+                    sb.appendCodePoint(cp);
+                    i = semi + 1;
+                }
+            }
+            amp = s.indexOf('&', i);
+        }
+        sb.append(s, i, s.length());
+        return sb.toString();
+    }
+
+    /**
+     * @return das Zeichen der Entity zwischen start und end (ohne &amp; und ;) oder -1
+     */
+    private static int codePoint(String s, int start, int end) {
+        if (start >= end) return -1;
+        if (s.charAt(start) == '#') {
+            int radix = 10;
+            int i = start + 1;
+            if (i < end && (s.charAt(i) == 'x' || s.charAt(i) == 'X')) {
+                radix = 16;
+                i++;
+            }
+            if (i >= end) return -1;
+            int cp = 0;
+            for (; i < end; i++) {
+                int d = Character.digit(s.charAt(i), radix);
+                if (d < 0) return -1;
+                cp = cp * radix + d;
+                if (cp > Character.MAX_CODE_POINT) return -1;
+            }
+            return cp;
+        }
+        Character c = ENTITIES.get(s.substring(start, end));
+        return c == null ? -1 : c;
+    }
+}
@@ -0,0 +1,90 @@
+package de.vibora.viborafeed;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlacklistMatcherTest {
+
+    private static BlacklistMatcher matcher(String... terms) {
+        return new BlacklistMatcher(terms);
+    }
+
+    @Test
+    public void ushers() {
+        BlacklistMatcher m = matcher("he", "she", "his", "hers");
+        // "she" ends first, "he" ends at the same char
+        assertEquals("she", m.find("ushers"));
+        assertEquals("he", matcher("he", "hers").find("ushers"));
+        assertEquals("hers", matcher("hers").find("ushers"));
+        assertEquals("his", m.find("this"));
+        assertNull(m.find("usurp"));
+    }
+
+    @Test
+    public void overlappingTerms() {
+        assertEquals("bc", matcher("abcd", "bc").find("abce"));
+        assertEquals("abcd", matcher("abcd", "bcx").find("abcd"));
+        assertEquals("aab", matcher("aab").find("aaab"));
+        assertEquals("abab", matcher("abab").find("aabaabab"));
+    }
+
+    @Test
+    public void suffixLinks() {
+        // "cab" is reached through the fail link of "xcab" at "xca"
+        assertEquals("cab", matcher("xcad", "cab").find("xcab"));
+        // the output of a suffix is inherited
+        assertEquals("c", matcher("abcd", "c").find("abc"));
+        assertNull(matcher("abcd", "bce").find("abcbc"));
+    }
+
+    @Test
+    public void caseAndCharacters() {
+        assertNull(matcher("Kader").find("der kader"));
+        assertEquals("Kader", matcher("Kader").find("Der Kader"));
+        assertEquals("Müll", matcher("Müll").find("Ärger mit Müll"));
+        assertEquals("\uFFFF", matcher("\uFFFF").find("a\uFFFFb"));
+    }
+
+    @Test
+    public void emptyTerms() {
+        assertTrue(BlacklistMatcher.fromCsv("").isEmpty());
+        assertTrue(BlacklistMatcher.fromCsv(null).isEmpty());
+        BlacklistMatcher m = BlacklistMatcher.fromCsv("DEG,,FC ");
+        assertEquals("FC ", m.find("Der FC spielt"));
+        assertNull(m.find("FC"));
+        assertNull(m.find(null));
+    }
+
+    @Test
+    public void sameAsContains() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            String[] terms = new String[1 + random.nextInt(6)];
+            for (int i = 0; i < terms.length; i++) terms[i] = word(random, 1 + random.nextInt(4));
+            BlacklistMatcher m = matcher(terms);
+            String text = word(random, random.nextInt(30));
+
+            boolean contained = false;
+            for (String term : terms) contained |= text.contains(term);
+            String found = m.find(text);
+            if (contained) {
+                assertNotNull(text, found);
+                assertTrue(text + " " + found, text.contains(found));
+            } else {
+                assertNull(text, found);
+            }
+        }
+    }
+
+    private static String word(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(3)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package de.vibora.viborafeed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeedDateTest {
+    /**
+     * 2017-05-01T12:00:00Z
+     */
+    private static final long NOON = 1493640000000L;
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public void iso() {
+        assertEquals(NOON, FeedDate.parse("2017-05-01T12:00:00Z"));
+        assertEquals(NOON, FeedDate.parse("2017-05-01t12:00:00z"));
+        assertEquals(NOON, FeedDate.parse("  2017-05-01 12:00:00 UTC"));
+        assertEquals(NOON, FeedDate.parse("2017-05-01T14:00:00+02:00"));
+        assertEquals(NOON, FeedDate.parse("2017-05-01T14:00:00+0200"));
+        assertEquals(NOON, FeedDate.parse("2017-05-01T07:00-05"));
+        assertEquals(NOON + 250, FeedDate.parse("2017-05-01T12:00:00.25Z"));
+        assertEquals(NOON + 123, FeedDate.parse("2017-05-01T12:00:00,123456Z"));
+        assertEquals(NOON - 12 * HOUR, FeedDate.parse("2017-05-01"));
+        // leap second
+        assertEquals(NOON + 12 * HOUR, FeedDate.parse("2017-05-01T23:59:60Z"));
+    }
+
+    @Test
+    public void isoInvalid() {
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12:00:00 Mars"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12:00:00."));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-13-01T12:00:00Z"));
+    }
+
+    @Test
+    public void isoOutOfRange() {
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T25:99:00Z"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T24:00:00Z"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12:60:00Z"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12:00:61Z"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-32T12:00:00Z"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-00T12:00:00Z"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12:00:00+19:00"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("2017-05-01T12:00:00+02:75"));
+    }
+
+    @Test
+    public void rfc822() {
+        assertEquals(NOON, FeedDate.parse("Mon, 01 May 2017 12:00:00 GMT"));
+        assertEquals(NOON, FeedDate.parse("Mon, 01 May 2017 14:00:00 +0200"));
+        assertEquals(NOON, FeedDate.parse("Mon, 1 May 2017 08:00:00 EDT"));
+        assertEquals(NOON, FeedDate.parse("01 May 17 12:00 GMT"));
+        assertEquals(NOON, FeedDate.parse("Mo, 1. Mai 2017 14:00:00 MESZ"));
+        assertEquals(NOON, FeedDate.parse("1-May-2017 12:00:00"));
+        assertEquals(NOON, FeedDate.parse("01 May 2017 12:00:00 GMT+00:00"));
+        // unknown zone names count as GMT
+        assertEquals(NOON, FeedDate.parse("01 May 2017 12:00:00 XYZ"));
+        assertEquals(NOON - 12 * HOUR, FeedDate.parse("01 May 2017"));
+    }
+
+    @Test
+    public void rfc822Invalid() {
+        assertEquals(FeedDate.INVALID, FeedDate.parse(null));
+        assertEquals(FeedDate.INVALID, FeedDate.parse(""));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("gestern"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 Foo 2017 12:00:00 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 May 201 12:00:00 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 May 2017 12:0 GMT"));
+    }
+
+    @Test
+    public void rfc822OutOfRange() {
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 May 2017 25:00:00 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 May 2017 12:99:00 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 May 2017 12:00:61 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("32 May 2017 12:00:00 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("0 May 2017 12:00:00 GMT"));
+        assertEquals(FeedDate.INVALID, FeedDate.parse("01 May 2017 12:00:00 +1900"));
+    }
+
+    @Test
+    public void dbRoundTrip() {
+        assertEquals(NOON, FeedDate.fromDb(FeedDate.toDb(NOON)));
+        // the db has no milliseconds
+        assertEquals(NOON, FeedDate.fromDb(FeedDate.toDb(NOON + 999)));
+        long winter = FeedDate.parse("2016-12-24T18:30:15Z");
+        assertEquals(winter, FeedDate.fromDb(FeedDate.toDb(winter)));
+        String db = FeedDate.toDb(NOON);
+        assertEquals(db, FeedDate.toDb(FeedDate.fromDb(db)));
+        assertEquals(19, db.length());
+    }
+
+    @Test
+    public void dbInvalid() {
+        assertEquals(FeedDate.INVALID, FeedDate.fromDb(null));
+        assertEquals(FeedDate.INVALID, FeedDate.fromDb("kaputt"));
+    }
+}
@@ -0,0 +1,106 @@
+package de.vibora.viborafeed;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FeedDedupTest {
+
+    private static class SetKeyStore implements FeedDedup.KeyStore {
+        final HashSet<String> keys = new HashSet<>();
+        int queries = 0;
+
+        @Override
+        public Collection<String> allKeys() {
+            return keys;
+        }
+
+        @Override
+        public Collection<String> storedKeys(List<String> asked) {
+            queries++;
+            assertTrue(asked.size() <= FeedDedup.MAX_SQL_ARGS);
+            ArrayList<String> stored = new ArrayList<>();
+            for (String key : asked) {
+                if (keys.contains(key)) stored.add(key);
+            }
+            return stored;
+        }
+    }
+
+    private static FeedItem item(String guid, String link, String title) {
+        FeedItem item = new FeedItem();
+        item.guid = guid;
+        item.link = link;
+        item.title = title;
+        return item;
+    }
+
+    @Test
+    public void keyPrefersGuid() {
+        assertEquals("g1", FeedDedup.key(item(" g1 ", "http://a/1", "t")));
+        assertEquals(FeedDedup.linkKey(item(null, "http://a/1", "t")),
+                FeedDedup.key(item("", "http://a/1", "t")));
+    }
+
+    @Test
+    public void knownKeyIsNotNew() {
+        SetKeyStore store = new SetKeyStore();
+        store.keys.add("g1");
+        FeedDedup dedup = new FeedDedup(store);
+        FeedItem fresh = item("g2", "http://a/2", "b");
+        List<FeedItem> result = dedup.filterNew(Arrays.asList(item("g1", "http://a/1", "a"), fresh));
+        assertEquals(1, result.size());
+        assertSame(fresh, result.get(0));
+    }
+
+    /**
+     * Zeilen aus der Migration v3 -&gt; v4 haben nur den Hash des Links bzw. Titels.
+     */
+    @Test
+    public void migratedRowsAreKnownByLinkOrTitle() {
+        SetKeyStore store = new SetKeyStore();
+        store.keys.add(FeedDedup.linkKey(item(null, "http://a/1", "a")));
+        store.keys.add(FeedDedup.linkKey(item(null, null, "b")));
+        FeedDedup dedup = new FeedDedup(store);
+        List<FeedItem> result = dedup.filterNew(Arrays.asList(
+                item("g1", "http://a/1", "a"),
+                item("g2", null, "b"),
+                item("g3", "http://a/3", "c")
+        ));
+        assertEquals(1, result.size());
+        assertEquals("g3", result.get(0).key);
+    }
+
+    @Test
+    public void duplicatesInOneFeedCountOnce() {
+        FeedDedup dedup = new FeedDedup(new SetKeyStore());
+        List<FeedItem> result = dedup.filterNew(Arrays.asList(
+                item("g1", "http://a/1", "a"),
+                item("g1", "http://a/1", "a")
+        ));
+        assertEquals(1, result.size());
+    }
+
+    @Test
+    public void manyMaybeKeysAreQueriedInChunks() {
+        SetKeyStore store = new SetKeyStore();
+        ArrayList<FeedItem> items = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            FeedItem item = item("g" + i, "http://a/" + i, "t" + i);
+            store.keys.add(FeedDedup.linkKey(item));
+            items.add(item);
+        }
+        FeedDedup dedup = new FeedDedup(store);
+        assertEquals(0, dedup.filterNew(items).size());
+        // 600 guid keys plus 600 link keys
+        assertEquals(3, store.queries);
+    }
+}
@@ -0,0 +1,114 @@
+package de.vibora.viborafeed;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeedParserTest {
+    private static final long DAY = 24 * 3600000L;
+    private static final int EXPUNGE = 7;
+
+    private static String rfc(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    private static String item(String title, long millis) {
+        return "<item><title>" + title + "</title><pubDate>" + rfc(millis) + "</pubDate></item>";
+    }
+
+    private static InputStream rss(String items) throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<rss version=\"2.0\" xmlns:media=\"http://search.yahoo.com/mrss/\">"
+                + "<channel><title>Kanal</title>" + items + "</channel></rss>";
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    private static List<FeedItem> parse(String items, final int max) throws Exception {
+        final List<FeedItem> result = new ArrayList<>();
+        FeedParser.parse(rss(items), EXPUNGE, new FeedParser.ItemListener() {
+            @Override
+            public boolean onItem(FeedItem item) {
+                result.add(item);
+                return result.size() < max;
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void readsAllTags() throws Exception {
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        List<FeedItem> items = parse("<item>"
+                + "<title>Erster</title><title>zweiter Titel</title>"
+                + "<description><![CDATA[<p>Hallo &amp; Welt</p>]]></description>"
+                + "<link>http://example.com/1</link>"
+                + "<guid isPermaLink=\"false\">id-1</guid>"
+                + "<pubDate>" + rfc(now) + "</pubDate>"
+                + "<content:encoded><![CDATA[<b>mehr</b>]]></content:encoded>"
+                + "<enclosure url=\"http://example.com/a.jpg\" type=\"image/jpeg\"/>"
+                + "<media:thumbnail url=\"http://example.com/t.jpg\"/>"
+                + "</item>", Integer.MAX_VALUE);
+
+        assertEquals(1, items.size());
+        FeedItem item = items.get(0);
+        // the first one counts
+        assertEquals("Erster", item.title);
+        assertEquals("<p>Hallo &amp; Welt</p>", item.description);
+        assertEquals("http://example.com/1", item.link);
+        assertEquals("id-1", item.guid);
+        assertEquals("<b>mehr</b>", item.content);
+        assertEquals("http://example.com/a.jpg", item.enclosure);
+        assertEquals("http://example.com/t.jpg", item.thumbnail);
+        assertEquals(now, item.date.getTime());
+        assertNull(item.key);
+    }
+
+    @Test
+    public void brokenDateIsNow() throws Exception {
+        long before = System.currentTimeMillis();
+        List<FeedItem> items = parse(
+                "<item><title>a</title><pubDate>gestern</pubDate></item><item><title>b</title></item>",
+                Integer.MAX_VALUE
+        );
+        assertEquals(2, items.size());
+        for (FeedItem item : items) assertTrue(item.date.getTime() >= before);
+    }
+
+    @Test
+    public void skipsOldItemsAndStopsAfterThree() throws Exception {
+        long now = System.currentTimeMillis();
+        long old = now - (EXPUNGE + 2) * DAY;
+        List<FeedItem> items = parse(
+                item("neu", now)
+                        + item("alt1", old) + item("alt2", old)
+                        + item("neu2", now)
+                        + item("alt3", old) + item("alt4", old) + item("alt5", old)
+                        + item("nie", now),
+                Integer.MAX_VALUE
+        );
+        assertEquals(2, items.size());
+        assertEquals("neu", items.get(0).title);
+        assertEquals("neu2", items.get(1).title);
+    }
+
+    @Test
+    public void listenerStops() throws Exception {
+        long now = System.currentTimeMillis();
+        List<FeedItem> items = parse(item("a", now) + item("b", now) + item("c", now), 2);
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(1).title);
+    }
+}
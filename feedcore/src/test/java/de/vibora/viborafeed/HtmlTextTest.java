@@ -0,0 +1,77 @@
+package de.vibora.viborafeed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Die erwarteten Werte sind die der alten Regex Kette (replaceAll über Tags, offene Tags
+ * bis zum Zeilenumbruch und das erste &gt;), außer bei Kommentaren mit &gt; darin.
+ */
+public class HtmlTextTest {
+    private static final String TAIL = "weiterlesen";
+
+    private static String text(String html) {
+        return HtmlText.toText(html, TAIL);
+    }
+
+    @Test
+    public void tagsBecomeSpaces() {
+        assertEquals("Hallo Welt", text("<p>Hallo</p>\n\n<p>Welt</p>"));
+        assertEquals("a b c", text("a<br/>b <i>c</i>"));
+    }
+
+    @Test
+    public void strayGtRemovesTheStartOfItsLine() {
+        assertEquals("baz", text("foo bar> baz"));
+        assertEquals("a c", text("a\nb> c"));
+        // only the first one
+        assertEquals("y> z", text("x> y> z"));
+        assertEquals("b", text("a&nbsp;> b"));
+    }
+
+    @Test
+    public void unclosedTagEndsAtLineBreak() {
+        // "<div\n" is the tag, then "foo>" is a stray '>'
+        assertEquals("bar", text("abc <div\nfoo> bar"));
+        assertEquals("a <b c", text("a <b\r\nc"));
+        assertEquals("a < b", text("a < b"));
+    }
+
+    @Test
+    public void comments() {
+        assertEquals("a b", text("a<!-- x -->b"));
+        assertEquals("x", text("<!-- a --><p>x</p><!-- b -->"));
+        assertEquals("a b", text("a<!-- 1 > 2 -->b"));
+        assertEquals("a<!-- open b", text("a<!-- open b"));
+    }
+
+    @Test
+    public void entities() {
+        assertEquals("ääää", text("&auml;&#228;&#xE4;&#XE4;"));
+        assertEquals("😀", text("&#128512;"));
+        // decoded only once
+        assertEquals("&amp;", text("&amp;amp;"));
+        assertEquals("&unknown; &#xZZ; & x", text("&unknown; &#xZZ; & x"));
+        assertEquals("a b", text("a&nbsp;&nbsp;b"));
+        assertEquals("a b", text("a&#32;b"));
+        assertEquals("<b>", text("&lt;b&gt;"));
+    }
+
+    @Test
+    public void cutAtTailWord() {
+        assertEquals("Text hier", text("Text hier <a href=\"x\">weiterlesen</a> und mehr"));
+        // not at the very start
+        assertEquals("weiterlesen am Anfang", text("weiterlesen am Anfang"));
+        assertEquals("weiterlesen", HtmlText.toText("weiterlesen", null));
+    }
+
+    @Test
+    public void lengthCap() {
+        assertEquals("abcde", HtmlText.toText("<p>abcdef ghij</p>", null, 5));
+        assertEquals("ab cd", HtmlText.toText("<p>ab   cd</p>ef", null, 5));
+        // a '>' after the cap is never read
+        assertEquals("abc", HtmlText.toText("abcdef> x", null, 3));
+        assertEquals("Hallo Welt", HtmlText.toText("<p>Hallo Welt</p>", null, 100));
+    }
+}